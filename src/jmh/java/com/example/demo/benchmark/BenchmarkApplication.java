@@ -0,0 +1,69 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.DemoApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application for a benchmark trial and fills it with generated todos
+ */
+final class BenchmarkApplication {
+
+    private static final int SEED_BATCH_SIZE = 10_000;
+
+    private static final int COMPLETION_DAYS = 30;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... profiles) {
+        var activeProfiles = new ArrayList<String>();
+        activeProfiles.add("benchmark");
+        activeProfiles.addAll(List.of(profiles));
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .web(webApplicationType)
+                .logStartupInfo(false)
+                .run("--spring.profiles.active=" + String.join(",", activeProfiles),
+                        "--server.port=0", "--logging.level.root=WARN");
+    }
+
+    static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    /**
+     * Inserts {@code rows} todos with plain JDBC batches, every second one completed
+     * at some time of the last {@value #COMPLETION_DAYS} days
+     */
+    static void seed(ConfigurableApplicationContext context, int rows) {
+        var jdbcTemplate = context.getBean(JdbcTemplate.class);
+        var now = Instant.now();
+        for (int from = 0; from < rows; from += SEED_BATCH_SIZE) {
+            int to = Math.min(from + SEED_BATCH_SIZE, rows);
+            List<Object[]> batch = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                var completedAt = Timestamp.from(now.minusSeconds(i * 7919L % (COMPLETION_DAYS * 86_400L)));
+                batch.add(new Object[]{"Benchmark item " + i, i % 2 == 0 ? null : completedAt});
+            }
+            jdbcTemplate.batchUpdate(
+                    "insert into to_do_entity (id, text, completed_at, version) values (next value for todo_seq, ?, ?, 0)",
+                    batch
+            );
+        }
+    }
+
+    static long[] ids(ConfigurableApplicationContext context) {
+        return context.getBean(JdbcTemplate.class)
+                .queryForList("select id from to_do_entity", Long.class)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.mapper.ToDoEntityToResponseMapper;
+import com.example.demo.model.ToDoEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ToDoEntityToResponseMapperBenchmark {
+
+    private final ToDoEntity inProgress = new ToDoEntity(1L, "Wash the dishes");
+
+    private final ToDoEntity completed = new ToDoEntity(2L, "Learn to test Java app").completeNow();
+
+    @Benchmark
+    public ToDoResponse mapInProgress() {
+        return ToDoEntityToResponseMapper.map(inProgress);
+    }
+
+    @Benchmark
+    public ToDoResponse mapCompleted() {
+        return ToDoEntityToResponseMapper.map(completed);
+    }
+}
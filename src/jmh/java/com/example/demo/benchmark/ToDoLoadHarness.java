@@ -0,0 +1,352 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoPageResponse;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.seed.ToDoSeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mixed workload against the REST API at a fixed rate and prints latency percentiles and throughput
+ * per operation. Requests are sent on schedule whether or not the earlier ones have been answered, and latencies
+ * are measured from the time a request was due, so a stalled server shows up in the percentiles instead of
+ * just slowing the load down. Without {@code --url} the application is started in this JVM and seeded first.
+ * <pre>
+ * mvn -P benchmarks test-compile exec:exec@load -Dload.args="--rps=500 --duration=60 --rows=1000000"
+ * </pre>
+ * Options, all optional: {@code --url}, {@code --rows} (100000, only without url), {@code --rps} (200),
+ * {@code --duration} and {@code --warmup} in seconds (30 and 5), {@code --ids} to fetch for the operations
+ * on single todos (100000), {@code --max-in-flight} (1000) and {@code --mix} with the weights of
+ * {@code list}, {@code get}, {@code upsert}, {@code complete}, {@code cancel} and {@code delete}.
+ */
+public final class ToDoLoadHarness {
+
+    enum Operation {
+        LIST,
+        GET,
+        UPSERT,
+        COMPLETE,
+        CANCEL,
+        DELETE
+    }
+
+    private static final String DEFAULT_MIX = "list=20,get=40,upsert=20,complete=8,cancel=7,delete=5";
+
+    private static final int PAGE_SIZE = 50;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String url;
+
+    private final Map<Operation, Integer> mix;
+
+    private final int weights;
+
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    //ids of existing todos, created ones are added and deleted ones removed
+    private final List<Long> ids = new ArrayList<>();
+
+    private volatile long measureFrom;
+
+    private ToDoLoadHarness(String url, Map<Operation, Integer> mix) {
+        this.url = url;
+        this.mix = mix;
+        this.weights = mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        ConfigurableApplicationContext context = null;
+        String url = options.get("url");
+        if (url == null) {
+            context = BenchmarkApplication.start(WebApplicationType.SERVLET);
+            context.getBean(ToDoSeeder.class).seed(Long.parseLong(options.getOrDefault("rows", "100000")));
+            url = "http://localhost:" + BenchmarkApplication.port(context);
+        }
+        try {
+            var harness = new ToDoLoadHarness(url, parseMix(options.getOrDefault("mix", DEFAULT_MIX)));
+            harness.loadIds(Integer.parseInt(options.getOrDefault("ids", "100000")));
+            harness.run(
+                    Integer.parseInt(options.getOrDefault("rps", "200")),
+                    Integer.parseInt(options.getOrDefault("warmup", "5")),
+                    Integer.parseInt(options.getOrDefault("duration", "30")),
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "1000"))
+            );
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.split("=");
+            weights.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Pages through the todos for the ids the single todo operations pick from
+     */
+    private void loadIds(int max) throws IOException, InterruptedException {
+        Long after = null;
+        while (ids.size() < max) {
+            HttpResponse<byte[]> response = client.send(
+                    get("/todos?limit=" + Math.min(1000, max - ids.size()) + (after == null ? "" : "&after=" + after)),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            ToDoPageResponse page = mapper.readValue(response.body(), ToDoPageResponse.class);
+            page.items.forEach(todo -> ids.add(todo.id));
+            if (page.nextCursor == null) {
+                break;
+            }
+            after = page.nextCursor;
+        }
+        System.out.printf("%d todos to pick from at %s%n", ids.size(), url);
+    }
+
+    private void run(int rps, int warmupSeconds, int durationSeconds, int maxInFlight) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rps;
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = pick();
+            if (inFlight.get() >= maxInFlight) {
+                //the server is too far behind, recorded instead of piling up more connections
+                if (due >= measureFrom) {
+                    stats.get(operation).drop();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            pending.add(send(operation, due));
+            if (pending.size() >= 10_000) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).orTimeout(30, TimeUnit.SECONDS)
+                .exceptionally(e -> null).join();
+        report(rps, durationSeconds);
+    }
+
+    private Operation pick() {
+        int value = ThreadLocalRandom.current().nextInt(weights);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.GET;
+    }
+
+    private CompletableFuture<?> send(Operation operation, long due) {
+        var random = ThreadLocalRandom.current();
+        Long id = randomId(operation == Operation.DELETE);
+        HttpRequest request;
+        switch (operation) {
+            case LIST:
+                request = get("/todos?limit=" + PAGE_SIZE + (id == null ? "" : "&after=" + id));
+                break;
+            case UPSERT:
+                //half of them update an existing todo
+                String body = random.nextBoolean() && id != null
+                        ? "{\"id\":" + id + ",\"text\":\"Updated by the load harness\"}"
+                        : "{\"text\":\"Created by the load harness\"}";
+                request = builder("/todos")
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                break;
+            case COMPLETE:
+                request = builder("/todos/" + id + "/complete").PUT(HttpRequest.BodyPublishers.noBody()).build();
+                break;
+            case CANCEL:
+                request = builder("/todos/" + id + "/cancel").PUT(HttpRequest.BodyPublishers.noBody()).build();
+                break;
+            case DELETE:
+                request = builder("/todos/" + id).DELETE().build();
+                break;
+            default:
+                request = get("/todos/" + id);
+                break;
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    inFlight.decrementAndGet();
+                    long latency = System.nanoTime() - due;
+                    if (due >= measureFrom) {
+                        stats.get(operation).record(response == null ? -1 : response.statusCode(), latency);
+                    }
+                    if (operation == Operation.UPSERT && response != null && response.statusCode() == 200) {
+                        created(response.body());
+                    }
+                });
+    }
+
+    private void created(byte[] body) {
+        try {
+            Long id = mapper.readValue(body, ToDoResponse.class).id;
+            synchronized (ids) {
+                ids.add(id);
+            }
+        } catch (IOException e) {
+            //an id less to pick from
+        }
+    }
+
+    private Long randomId(boolean remove) {
+        synchronized (ids) {
+            if (ids.isEmpty()) {
+                return null;
+            }
+            int index = ThreadLocalRandom.current().nextInt(ids.size());
+            Long id = ids.get(index);
+            if (remove) {
+                ids.set(index, ids.get(ids.size() - 1));
+                ids.remove(ids.size() - 1);
+            }
+            return id;
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return builder(path).GET().build();
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder(URI.create(url + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private void report(int rps, int durationSeconds) {
+        System.out.printf("%n%-9s %9s %9s %7s %7s %7s %8s %9s %9s %9s %9s %9s%n", "operation", "requests",
+                "2xx", "4xx", "5xx", "failed", "dropped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        var total = new Stats();
+        stats.forEach((operation, operationStats) -> {
+            print(operation.name().toLowerCase(), operationStats);
+            total.add(operationStats);
+        });
+        print("total", total);
+        System.out.printf("%nthroughput %.1f requests/s of %d/s targeted over %d s%n",
+                (double) total.count / durationSeconds, rps, durationSeconds);
+    }
+
+    private static void print(String name, Stats stats) {
+        long[] latencies = stats.sorted();
+        System.out.printf("%-9s %9d %9d %7d %7d %7d %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, stats.count,
+                stats.successful, stats.clientErrors, stats.serverErrors, stats.failed, stats.dropped,
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), percentile(latencies, 1));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    /**
+     * Outcomes and latencies in nanoseconds of one operation
+     */
+    private static final class Stats {
+
+        private long count;
+
+        private long successful;
+
+        private long clientErrors;
+
+        private long serverErrors;
+
+        private long failed;
+
+        private long dropped;
+
+        private long[] latencies = new long[1024];
+
+        synchronized void record(int status, long latency) {
+            count++;
+            if (status < 0) {
+                failed++;
+            } else if (status < 400) {
+                successful++;
+            } else if (status < 500) {
+                //mostly 404 and 409, as deletes and completions race with the other requests
+                clientErrors++;
+            } else {
+                serverErrors++;
+            }
+            if (count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, Math.max(1024, latencies.length * 2));
+            }
+            latencies[(int) count - 1] = latency;
+        }
+
+        synchronized void drop() {
+            dropped++;
+        }
+
+        synchronized void add(Stats other) {
+            long[] merged = Arrays.copyOf(latencies, (int) (count + other.count));
+            System.arraycopy(other.latencies, 0, merged, (int) count, (int) other.count);
+            latencies = merged;
+            count += other.count;
+            successful += other.successful;
+            clientErrors += other.clientErrors;
+            serverErrors += other.serverErrors;
+            failed += other.failed;
+            dropped += other.dropped;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(latencies, (int) count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoRepository;
+import com.example.demo.search.ToDoSearchIndex;
+import com.example.demo.service.ToDoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding todos by a word of their text: {@link ToDoService#search} through the in-memory index
+ * against a {@code LIKE '%word%'} scan of the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ToDoSearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private ToDoService toDoService;
+
+    private ToDoRepository toDoRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(WebApplicationType.NONE);
+        BenchmarkApplication.seed(context, rows);
+        //seeding bypasses the service, so the index built on startup is empty
+        context.getBean(ToDoSearchIndex.class).rebuild();
+        toDoService = context.getBean(ToDoService.class);
+        toDoRepository = context.getBean(ToDoRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ToDoResponse> index() {
+        return toDoService.search(word());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ToDoResponse> like() {
+        String pattern = "%" + word() + "%";
+        Specification<ToDoEntity> textContains = (root, query, cb) ->
+                cb.like(cb.lower(root.get("text")), pattern);
+        return toDoRepository.findAllResponses(textContains);
+    }
+
+    /**
+     * Number of a random seeded row, every generated text contains exactly one of them
+     */
+    private String word() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(rows));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.service.ToDoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ToDoService} against in-memory H2 holding {@link #rows} todos.
+ * {@code upsertAll} reports the time per row so it can be compared with {@code upsert} directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ToDoServiceBenchmark {
+
+    private static final int BATCH_SIZE = 1_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private ToDoService toDoService;
+
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(WebApplicationType.NONE);
+        BenchmarkApplication.seed(context, rows);
+        toDoService = context.getBean(ToDoService.class);
+        ids = BenchmarkApplication.ids(context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ToDoResponse> getAll() {
+        return toDoService.getAll();
+    }
+
+    @Benchmark
+    public ToDoResponse upsert() {
+        return toDoService.upsert(updateRequest());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ToDoResponse> upsertAll() {
+        var requests = new ArrayList<ToDoSaveRequest>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            requests.add(updateRequest());
+        }
+        return toDoService.upsertAll(requests);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ToDoCompletionBucket> completionsPerHourOfLastWeek() {
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        return toDoService.getCompletionHistogram(ToDoCompletionBucket.Size.HOUR, now.minusDays(7), now);
+    }
+
+    /**
+     * Over all seeded completions. The window moves with the clock, H2 would otherwise hand back
+     * the previous result of the unchanged table without running the query.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ToDoCompletionBucket> completionsPerDayOfLastMonth() {
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        return toDoService.getCompletionHistogram(ToDoCompletionBucket.Size.DAY, now.minusDays(31), now);
+    }
+
+    private ToDoSaveRequest updateRequest() {
+        var request = new ToDoSaveRequest();
+        request.id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        request.text = "Updated benchmark item";
+        return request;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.service.ToDoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput of creating and reading todos from several threads with {@link #shards} in-memory H2 shards,
+ * one meaning the sharding profile is off. All shards live in this JVM, so the numbers show the overhead
+ * of routing and the relief of the contention on a single database, not the gain of separate servers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class ToDoShardingBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private ConfigurableApplicationContext context;
+
+    private ToDoService toDoService;
+
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        if (shards > 1) {
+            System.setProperty("todo.sharding.urls", IntStream.range(0, shards)
+                    .mapToObj(i -> "jdbc:h2:mem:benchmark-shard-" + i)
+                    .collect(Collectors.joining(",")));
+            context = BenchmarkApplication.start(WebApplicationType.NONE, "sharding");
+        } else {
+            context = BenchmarkApplication.start(WebApplicationType.NONE);
+        }
+        toDoService = context.getBean(ToDoService.class);
+        //through the service, so the rows land on the shards their ids belong to
+        List<ToDoSaveRequest> requests = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            requests.add(saveRequest("Benchmark item " + i));
+        }
+        ids = toDoService.upsertAll(requests).stream().mapToLong(todo -> todo.id).toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.clearProperty("todo.sharding.urls");
+    }
+
+    @Benchmark
+    public ToDoResponse create() {
+        return toDoService.upsert(saveRequest("Created in benchmark"));
+    }
+
+    @Benchmark
+    public ToDoResponse getOne() throws ToDoNotFoundException {
+        return toDoService.getOne(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    private static ToDoSaveRequest saveRequest(String text) {
+        var request = new ToDoSaveRequest();
+        request.text = text;
+        return request;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of {@code GET /todos?isCompleted=false} over real HTTP, servlet stack against the reactive one.
+ * Every benchmark thread is a client with its own keep-alive connection.
+ * After each iteration the live threads and the heap after GC are printed, divided by {@link #CONNECTIONS}
+ * they give the memory a connection costs; {@code -prof gc} adds the allocations per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(ToDoStackBenchmark.CONNECTIONS)
+public class ToDoStackBenchmark {
+
+    static final int CONNECTIONS = 64;
+
+    @Param({"servlet", "reactive"})
+    public String stack;
+
+    @Param({"100"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private HttpClient client;
+
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        context = "reactive".equals(stack)
+                ? BenchmarkApplication.start(WebApplicationType.REACTIVE, "reactive")
+                : BenchmarkApplication.start(WebApplicationType.SERVLET);
+        BenchmarkApplication.seed(context, rows);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create(
+                "http://localhost:" + BenchmarkApplication.port(context) + "/todos?isCompleted=false"
+        )).build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printFootprint() {
+        System.gc();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%n%s: %d live threads, %d MB heap used after GC%n",
+                stack, Thread.activeCount(), heapUsed / (1024 * 1024));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] getAllInProgress() throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.service.ToDoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code upsert} with a client-supplied id against in-memory H2 holding {@link #rows} todos,
+ * with the single MERGE statement ({@code nativeUpsert=true}) and with the select followed by
+ * an update or insert of Hibernate ({@code nativeUpsert=false}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ToDoUpsertBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean nativeUpsert;
+
+    private ConfigurableApplicationContext context;
+
+    private ToDoService toDoService;
+
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("todo.upsert.native", String.valueOf(nativeUpsert));
+        context = BenchmarkApplication.start(WebApplicationType.NONE);
+        BenchmarkApplication.seed(context, rows);
+        toDoService = context.getBean(ToDoService.class);
+        ids = BenchmarkApplication.ids(context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.clearProperty("todo.upsert.native");
+    }
+
+    @Benchmark
+    public ToDoResponse updateExisting() {
+        return toDoService.upsert(saveRequest(ids[ThreadLocalRandom.current().nextInt(ids.length)], "Updated in benchmark"));
+    }
+
+    @Benchmark
+    public ToDoResponse createWithUnknownId() {
+        //negative ids are never generated, so every call inserts a todo
+        return toDoService.upsert(saveRequest(-1L, "Created in benchmark"));
+    }
+
+    private static ToDoSaveRequest saveRequest(long id, String text) {
+        var request = new ToDoSaveRequest();
+        request.id = id;
+        request.text = text;
+        return request;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.config.WireFormatConfig;
+import com.example.demo.dto.ToDoResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a list response as JSON, the way Spring Boot configures it, against CBOR and Smile
+ * configured like {@link WireFormatConfig}. The payload sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ToDoWireFormatBenchmark {
+
+    @Param({"10000"})
+    public int size;
+
+    private ObjectMapper json;
+
+    private ObjectMapper cbor;
+
+    private ObjectMapper smile;
+
+    private List<ToDoResponse> todos;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        json = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        cbor = WireFormatConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+        smile = WireFormatConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new SmileFactory());
+        var completedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        todos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            todos.add(new ToDoResponse((long) i, "Benchmark item " + i, i % 2 == 0 ? null : completedAt, 0));
+        }
+        System.out.printf("%nPayload of %d todos: json %d bytes, cbor %d bytes, smile %d bytes%n", size,
+                json.writeValueAsBytes(todos).length,
+                cbor.writeValueAsBytes(todos).length,
+                smile.writeValueAsBytes(todos).length);
+    }
+
+    @Benchmark
+    public byte[] json() throws JsonProcessingException {
+        return json.writeValueAsBytes(todos);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws JsonProcessingException {
+        return cbor.writeValueAsBytes(todos);
+    }
+
+    @Benchmark
+    public byte[] smile() throws JsonProcessingException {
+        return smile.writeValueAsBytes(todos);
+    }
+}
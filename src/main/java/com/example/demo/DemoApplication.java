@@ -1,16 +1,34 @@
 package com.example.demo;
 
+import com.example.demo.dto.ToDoImportResponse;
+import com.example.demo.importer.ToDoImporter;
 import com.example.demo.model.ToDoEntity;
 import com.example.demo.repository.ToDoRepository;
+import com.example.demo.seed.ToDoSeeder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @SpringBootApplication
+//run the cache advice around the transactional one, so puts and evictions happen after commit
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 public class DemoApplication {
 
+    private static final Logger log = LoggerFactory.getLogger(DemoApplication.class);
+
     public static void main(String[] args) {
         SpringApplication.run(DemoApplication.class, args);
     }
@@ -25,4 +43,32 @@ public class DemoApplication {
             );
         };
     }
+
+    /**
+     * Fills the database with {@code todo.seed.rows} generated todos on startup, see {@link ToDoSeeder}, for example
+     * {@code java -jar demo.jar --spring.profiles.active=seed --todo.seed.rows=10000000}
+     */
+    @Bean
+    @Profile("seed")
+    ApplicationRunner seedDatabase(ToDoSeeder seeder, @Value("${todo.seed.rows:100000}") long rows) {
+        return args -> seeder.seed(rows);
+    }
+
+    /**
+     * Imports the CSV or NDJSON files given as arguments and exits, for example
+     * {@code java -jar demo.jar --spring.profiles.active=import todos.csv}
+     */
+    @Bean
+    @Profile("import")
+    ApplicationRunner importFiles(ToDoImporter importer) {
+        return args -> {
+            for (String file : args.getNonOptionArgs()) {
+                log.info("Importing {}", file);
+                try (Reader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+                    ToDoImportResponse result = importer.importTodos(reader, ToDoImporter.Format.of(file));
+                    result.errors.forEach(error -> log.warn("{}:{} skipped: {}", file, error.line, error.message));
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,85 @@
+package com.example.demo.config;
+
+import com.example.demo.replica.ReplicaContext;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+@Configuration
+@Profile("!reactive")
+public class AsyncConfig implements WebMvcConfigurer {
+
+    public static final String DATABASE_EXECUTOR = "databaseExecutor";
+
+    /**
+     * Request attribute with the timeout in milliseconds of a response streamed by the database executor,
+     * in place of {@code spring.mvc.async.request-timeout}
+     */
+    public static final String STREAMING_TIMEOUT_ATTRIBUTE = AsyncConfig.class.getName() + ".streamingTimeout";
+
+    private final int poolSize;
+
+    private final int queueCapacity;
+
+    public AsyncConfig(@Value("${todo.async.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize,
+                       @Value("${todo.async.queue-capacity:200}") int queueCapacity) {
+        this.poolSize = poolSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Runs the database work of the controllers, so request threads are released while it waits.
+     * It has as many threads as the connection pool has connections, more could only wait for one.
+     * When the queue is full new requests are rejected instead of piling up.
+     */
+    @Bean(DATABASE_EXECUTOR)
+    public ThreadPoolTaskExecutor databaseExecutor() {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("todo-db-");
+        //the work still reads from the primary when the request has to
+        executor.setTaskDecorator(ReplicaContext::propagate);
+        return executor;
+    }
+
+    /**
+     * Publishes queue depth, active threads and completed tasks as {@code executor.*} meters
+     */
+    @Bean
+    public MeterBinder databaseExecutorMetrics(ThreadPoolTaskExecutor databaseExecutor) {
+        return registry -> new ExecutorServiceMetrics(
+                databaseExecutor.getThreadPoolExecutor(), DATABASE_EXECUTOR, Tags.empty()
+        ).bindTo(registry);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        //streaming responses read from the database too
+        configurer.setTaskExecutor(databaseExecutor());
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                //set before the request goes async, the default timeout would cut a long export off mid-stream
+                Object timeout = request.getAttribute(STREAMING_TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                if (timeout != null && request instanceof AsyncWebRequest) {
+                    ((AsyncWebRequest) request).setTimeout((Long) timeout);
+                }
+            }
+        });
+    }
+}
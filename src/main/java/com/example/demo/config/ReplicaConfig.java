@@ -0,0 +1,96 @@
+package com.example.demo.config;
+
+import com.example.demo.replica.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The primary from {@code spring.datasource.*} and a connection pool per url in {@code todo.replicas.urls},
+ * read-only transactions are routed to the replicas. Cannot be combined with the {@code sharding} profile.
+ */
+@Configuration
+@Profile("replicas")
+public class ReplicaConfig {
+
+    private final DataSourceProperties properties;
+
+    private final List<String> urls;
+
+    private final int poolSize;
+
+    private final long healthCheckIntervalMs;
+
+    private final long connectionTimeoutMs;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    public ReplicaConfig(DataSourceProperties properties,
+                         @Value("${todo.replicas.urls}") List<String> urls,
+                         @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                         @Value("${todo.replicas.health-check-interval-ms:5000}") long healthCheckIntervalMs,
+                         @Value("${todo.replicas.connection-timeout-ms:1000}") long connectionTimeoutMs) {
+        this.properties = properties;
+        this.urls = urls;
+        this.poolSize = poolSize;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * The only DataSource bean, as the datasource initialization of Spring Boot runs for every one of them.
+     * The routing datasource is reached with {@code unwrap(ReplicaRoutingDataSource.class)}.
+     * Takes the connection only on the first statement, when the transaction is known to be read-only.
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public DataSource dataSource() {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("todo-primary");
+        primary.setMaximumPoolSize(poolSize);
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            var replica = new HikariDataSource();
+            replica.setPoolName("todo-replica-" + i);
+            replica.setJdbcUrl(urls.get(i));
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(poolSize);
+            //an unreachable replica must not hold up reads for long, they fall back to the primary
+            replica.setConnectionTimeout(connectionTimeoutMs);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, healthCheckIntervalMs);
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Publishes the number of replicas that passed their last health check as {@code todo.replicas.healthy}
+     */
+    @Bean
+    public MeterBinder replicaMetrics() {
+        return registry -> Gauge.builder("todo.replicas.healthy",
+                () -> routingDataSource == null ? 0 : routingDataSource.healthyCount())
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void closeDataSources() throws Exception {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.config;
+
+import com.example.demo.sharding.ShardRoutingDataSource;
+import com.example.demo.sharding.ShardSchemaIntegrator;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One connection pool per url in {@code todo.sharding.urls}, routed by the shard bound to the current thread
+ */
+@Configuration
+@Profile("sharding")
+public class ShardingConfig {
+
+    private final List<String> urls;
+
+    private final String username;
+
+    private final String password;
+
+    private final int poolSize;
+
+    private ShardRoutingDataSource routingDataSource;
+
+    public ShardingConfig(@Value("${todo.sharding.urls}") List<String> urls,
+                          @Value("${spring.datasource.username:sa}") String username,
+                          @Value("${spring.datasource.password:}") String password,
+                          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.urls = urls;
+        this.username = username;
+        this.password = password;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * The only DataSource bean, as the datasource initialization of Spring Boot runs for every one of them.
+     * The routing datasource is reached with {@code unwrap(ShardRoutingDataSource.class)}.
+     * Takes the connection only on the first statement, when the service has bound the shard.
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public DataSource dataSource() {
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            var shard = new HikariDataSource();
+            shard.setPoolName("todo-shard-" + i);
+            shard.setJdbcUrl(urls.get(i));
+            shard.setUsername(username);
+            shard.setPassword(password);
+            shard.setMaximumPoolSize(poolSize);
+            shards.add(shard);
+        }
+        routingDataSource = new ShardRoutingDataSource(shards);
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @PreDestroy
+    public void closeShards() throws Exception {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaCustomizer() {
+        return properties -> properties.put("hibernate.integrator_provider",
+                (IntegratorProvider) () -> List.of(new ShardSchemaIntegrator(urls.size())));
+    }
+}
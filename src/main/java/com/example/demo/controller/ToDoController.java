@@ -1,31 +1,187 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.ToDoBulkOperationResponse;
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoImportResponse;
+import com.example.demo.dto.ToDoListVersion;
+import com.example.demo.dto.ToDoPageResponse;
 import com.example.demo.dto.ToDoResponse;
 import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.config.AsyncConfig;
+import com.example.demo.event.ToDoEventFeed;
+import com.example.demo.exception.ToDoConflictException;
 import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.importer.ToDoImporter;
 import com.example.demo.service.ToDoService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @RestController
+@Profile("!reactive")
 public class ToDoController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
     @Autowired
     ToDoService toDoService;
 
+    @Autowired
+    ToDoEventFeed eventFeed;
+
+    @Autowired
+    ToDoImporter importer;
+
+    @Autowired
+    ToDoListResponseCache listResponseCache;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    Validator validator;
+
+    @Autowired
+    @Qualifier(AsyncConfig.DATABASE_EXECUTOR)
+    AsyncTaskExecutor databaseExecutor;
+
+    @Value("${todo.import.timeout-ms:3600000}")
+    long importTimeoutMs;
+
+    @Value("${todo.export.timeout-ms:3600000}")
+    long exportTimeoutMs;
+
     @ExceptionHandler({ToDoNotFoundException.class})
     public ResponseEntity<Object> handleException(Exception ex) {
         return ResponseEntity.notFound().build();
     }
 
+    @ExceptionHandler({ToDoConflictException.class})
+    public ResponseEntity<Object> handleConflict(Exception ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler({ConstraintViolationException.class})
+    public ResponseEntity<Object> handleConstraintViolation(Exception ex) {
+        return ResponseEntity.badRequest().build();
+    }
+
+    @ExceptionHandler({TaskRejectedException.class})
+    public ResponseEntity<Object> handleRejected(Exception ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
     @GetMapping("/todos")
     @Valid
-    public List<ToDoResponse> getAll(@RequestParam(required = false) Boolean isCompleted) {
+    public CompletableFuture<ResponseEntity<?>> getAll(
+            @RequestParam(required = false) Boolean isCompleted,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime completedAfter,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime completedBefore,
+            @RequestParam(defaultValue = "false") boolean includeArchived,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        //archived todos are all completed, a list of todos in progress is the same with or without them
+        if (includeArchived && !Boolean.FALSE.equals(isCompleted)) {
+            //the archive is read on request only, neither cached nor revalidated
+            return this.<ResponseEntity<?>>async(() -> {
+                List<ToDoResponse> todos = toDoService.getAllIncludingArchived(
+                        Boolean.TRUE.equals(isCompleted), completedAfter, completedBefore);
+                return ResponseEntity.ok()
+                        .eTag(eTag(ToDoListVersion.of(todos)))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(todos);
+            });
+        }
+        if (completedAfter != null || completedBefore != null) {
+            //ranges are neither cached nor revalidated, the index on completedAt keeps them cheap
+            return this.<ResponseEntity<?>>async(() -> {
+                List<ToDoResponse> todos = Boolean.FALSE.equals(isCompleted)
+                        ? List.of()
+                        : toDoService.getAllCompleted(completedAfter, completedBefore);
+                return ResponseEntity.ok()
+                        .eTag(eTag(ToDoListVersion.of(todos)))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(todos);
+            });
+        }
+        boolean gzipped = acceptsGzip(acceptEncoding) && prefersJson(accept);
+        if (gzipped) {
+            var cached = listResponseCache.get(isCompleted);
+            if (cached != null) {
+                //no query and no serialization, not even a trip through the database executor
+                return CompletableFuture.completedFuture(gzippedList(cached, ifNoneMatch));
+            }
+        }
+        return this.<ResponseEntity<?>>async(() -> {
+            //answer a revalidation from the aggregate alone, without loading the list
+            if (ifNoneMatch != null) {
+                String eTag = eTag(getListVersion(isCompleted));
+                if (gzipped) {
+                    eTag = gzipETag(eTag);
+                }
+                if (matches(ifNoneMatch, eTag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(eTag)
+                            .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                            .build();
+                }
+            }
+            if (gzipped) {
+                return gzippedList(listResponseCache.load(isCompleted, () -> getList(isCompleted)), null);
+            }
+            List<ToDoResponse> todos = getList(isCompleted);
+            //the same ETag for every format, so caches have to keep the formats apart
+            return ResponseEntity.ok()
+                    .eTag(eTag(ToDoListVersion.of(todos)))
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .body(todos);
+        });
+    }
+
+    private List<ToDoResponse> getList(Boolean isCompleted) {
         if (isCompleted != null) {
             if (isCompleted) {
                 return toDoService.getAllCompleted();
@@ -35,40 +191,315 @@ public class ToDoController {
         return toDoService.getAll();
     }
 
+    private static ResponseEntity<?> gzippedList(ToDoListResponseCache.Entry entry, String ifNoneMatch) {
+        String eTag = gzipETag(eTag(entry.getVersion()));
+        if (ifNoneMatch != null && matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .eTag(eTag)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .body(entry.getGzippedJson());
+    }
+
+    private ToDoListVersion getListVersion(Boolean isCompleted) {
+        if (isCompleted != null) {
+            if (isCompleted) {
+                return toDoService.getListVersionCompleted();
+            }
+            return toDoService.getListVersionInProgress();
+        }
+        return toDoService.getListVersion();
+    }
+
+    /**
+     * Todos completed per hour or day in UTC, optionally within {@code [completedAfter, completedBefore)}
+     */
+    @GetMapping("/todos/stats/completions")
+    public CompletableFuture<List<ToDoCompletionBucket>> getCompletionHistogram(
+            @RequestParam(defaultValue = "day") String bucket,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime completedAfter,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime completedBefore) {
+        ToDoCompletionBucket.Size size;
+        try {
+            size = ToDoCompletionBucket.Size.of(bucket);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bucket must be hour or day");
+        }
+        return async(() -> toDoService.getCompletionHistogram(size, completedAfter, completedBefore));
+    }
+
+    @GetMapping(value = "/todos", params = "q")
+    @Valid
+    public CompletableFuture<List<ToDoResponse>> search(@RequestParam String q,
+                                                        @RequestParam(required = false) Boolean isCompleted) {
+        return async(() -> {
+            if (isCompleted != null) {
+                if (isCompleted) {
+                    return toDoService.searchCompleted(q);
+                }
+                return toDoService.searchInProgress(q);
+            }
+            return toDoService.search(q);
+        });
+    }
+
+    @GetMapping(value = "/todos", params = {"limit", "!q"})
+    @Valid
+    public CompletableFuture<ToDoPageResponse> getPage(@RequestParam(required = false) Boolean isCompleted,
+                                                       @RequestParam(required = false) Long after,
+                                                       @RequestParam int limit) {
+        return async(() -> {
+            if (isCompleted != null) {
+                if (isCompleted) {
+                    return toDoService.getPageCompleted(after, limit);
+                }
+                return toDoService.getPageInProgress(after, limit);
+            }
+            return toDoService.getPage(after, limit);
+        });
+    }
+
+    @GetMapping(value = "/todos", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) Boolean isCompleted,
+                                                        HttpServletRequest request) {
+        request.setAttribute(AsyncConfig.STREAMING_TIMEOUT_ATTRIBUTE, exportTimeoutMs);
+        StreamingResponseBody body = outputStream -> {
+            if (isCompleted != null) {
+                if (isCompleted) {
+                    writeNdjson(outputStream, toDoService::exportAllCompleted);
+                } else {
+                    writeNdjson(outputStream, toDoService::exportAllInProgress);
+                }
+            } else {
+                writeNdjson(outputStream, toDoService::exportAll);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    private void writeNdjson(OutputStream outputStream, Consumer<Consumer<ToDoResponse>> export) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            var first = new boolean[]{true};
+            export.accept(todo -> {
+                try {
+                    writer.writeValue(generator, todo);
+                    generator.writeRaw('\n');
+                    if (first[0]) {
+                        //send the first line right away, the rest goes out as the buffers fill up
+                        generator.flush();
+                        first[0] = false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @GetMapping(value = "/todos/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId)
+            throws IOException {
+        return eventFeed.subscribe(lastEventId);
+    }
+
     @PostMapping("/todos")
     @Valid
-    public ToDoResponse save(@Valid @RequestBody ToDoSaveRequest todoSaveRequest) throws ToDoNotFoundException {
-        return toDoService.upsert(todoSaveRequest);
+    public CompletableFuture<ToDoResponse> save(@Valid @RequestBody ToDoSaveRequest todoSaveRequest) {
+        return async(() -> toDoService.upsert(todoSaveRequest));
+    }
+
+    @PostMapping("/todos/batch")
+    @Valid
+    public CompletableFuture<List<ToDoResponse>> saveAll(@RequestBody List<ToDoSaveRequest> todoSaveRequests) {
+        //@Valid does not cascade into a plain list body, so the items are checked one by one
+        Set<ConstraintViolation<ToDoSaveRequest>> violations = new HashSet<>();
+        for (ToDoSaveRequest todoSaveRequest : todoSaveRequests) {
+            violations.addAll(validator.validate(todoSaveRequest));
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        return async(() -> toDoService.upsertAll(todoSaveRequests));
+    }
+
+    /**
+     * Reads the body while importing it, so the file is never held in memory as a whole.
+     * Runs on the database executor with its own timeout instead of the much shorter default one.
+     */
+    @PostMapping(value = "/todos/import", consumes = {TEXT_CSV_VALUE, APPLICATION_NDJSON_VALUE})
+    public WebAsyncTask<ToDoImportResponse> importTodos(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                        InputStream body) {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        var charset = mediaType.getCharset() != null ? mediaType.getCharset() : StandardCharsets.UTF_8;
+        return new WebAsyncTask<>(importTimeoutMs, databaseExecutor, () ->
+                importer.importTodos(new InputStreamReader(body, charset), ToDoImporter.Format.of(mediaType)));
     }
 
     @PutMapping("/todos/{id}/complete")
     @Valid
-    public ToDoResponse save(@PathVariable Long id) throws ToDoNotFoundException {
-        return toDoService.completeToDo(id);
+    public CompletableFuture<ToDoResponse> save(@PathVariable Long id) {
+        return async(() -> toDoService.completeToDo(id));
     }
 
     @PutMapping("/todos/{id}/cancel")
     @Valid
-    public ToDoResponse cancel(@PathVariable Long id) throws ToDoNotFoundException {
-        return toDoService.cancelToDo(id);
+    public CompletableFuture<ToDoResponse> cancel(@PathVariable Long id) {
+        return async(() -> toDoService.cancelToDo(id));
+    }
+
+    @PutMapping("/todos/complete")
+    public CompletableFuture<ToDoBulkOperationResponse> completeAll(@RequestBody(required = false) List<Long> ids) {
+        //without a body every todo in progress is completed
+        if (ids == null) {
+            return async(() -> new ToDoBulkOperationResponse(toDoService.completeAllInProgress()));
+        }
+        return async(() -> new ToDoBulkOperationResponse(toDoService.completeAll(ids)));
+    }
+
+    @PutMapping("/todos/cancel")
+    public CompletableFuture<ToDoBulkOperationResponse> cancelAll(@RequestBody(required = false) List<Long> ids) {
+        //without a body every completed todo is cancelled
+        if (ids == null) {
+            return async(() -> new ToDoBulkOperationResponse(toDoService.cancelAllCompleted()));
+        }
+        return async(() -> new ToDoBulkOperationResponse(toDoService.cancelAll(ids)));
     }
 
     @GetMapping("/todos/{id}")
     @Valid
-    public ToDoResponse getOne(@PathVariable Long id) throws ToDoNotFoundException {
-        return toDoService.getOne(id);
+    public CompletableFuture<ResponseEntity<ToDoResponse>> getOne(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean includeArchived,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (includeArchived) {
+            //the version alone cannot be looked up in both tables any cheaper than the todo
+            return async(() -> {
+                ToDoResponse todo = toDoService.getOneIncludingArchived(id);
+                String eTag = eTag(todo.version);
+                if (ifNoneMatch != null && matches(ifNoneMatch, eTag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+                }
+                return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(todo);
+            });
+        }
+        return async(() -> {
+            if (ifNoneMatch != null) {
+                String eTag = eTag(toDoService.getVersion(id));
+                if (matches(ifNoneMatch, eTag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+                }
+            }
+            ToDoResponse todo = toDoService.getOne(id);
+            return ResponseEntity.ok().eTag(eTag(todo.version)).varyBy(HttpHeaders.ACCEPT).body(todo);
+        });
     }
 
     @DeleteMapping("/todos/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void delete(@PathVariable Long id) {
-        toDoService.deleteOne(id);
+    public CompletableFuture<Void> delete(@PathVariable Long id) {
+        return async(() -> {
+            toDoService.deleteOne(id);
+            return null;
+        });
     }
 
     @DeleteMapping("/todos")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void deleteAll() {
-        toDoService.deleteAll();
+    public CompletableFuture<Void> deleteAll() {
+        return async(() -> {
+            toDoService.deleteAll();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the call on the database executor, so the request thread goes back to the container meanwhile.
+     * Throws {@link TaskRejectedException} right away when the executor queue is full.
+     */
+    private <T> CompletableFuture<T> async(Callable<T> call) {
+        var result = new CompletableFuture<T>();
+        databaseExecutor.execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * The gzipped body is another representation than the identity one, so it needs a strong ETag of its own
+     */
+    private static String gzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+    }
+
+    /**
+     * Weak comparison of If-None-Match as used for GET, {@code *} matches any existing resource.
+     * The ETags of the gzipped and the identity body match each other, a client may have either
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        String identity = eTag.replace(GZIP_ETAG_SUFFIX + "\"", "\"");
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim().replace(GZIP_ETAG_SUFFIX + "\"", "\"");
+            if (candidate.equals("*") || candidate.equals(identity) || candidate.equals("W/" + identity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the most preferred type of Accept is served as JSON, which a missing header is as well
+     */
+    private static boolean prefersJson(String accept) {
+        if (accept == null) {
+            return true;
+        }
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(mediaTypes);
+            return mediaTypes.isEmpty() || mediaTypes.get(0).isCompatibleWith(MediaType.APPLICATION_JSON);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean refused = parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            if ((name.equalsIgnoreCase("gzip") || name.equals("*")) && !refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String eTag(ToDoListVersion version) {
+        return "\"" + version.count + "-" + version.maxVersion + "-" + version.versionSum + "\"";
     }
 
 }
\ No newline at end of file
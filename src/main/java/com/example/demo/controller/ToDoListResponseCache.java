@@ -0,0 +1,97 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ToDoListVersion;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.replica.ReplicaContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped JSON of the whole list of todos, of the completed ones and of the ones in progress,
+ * so repeated reads between changes neither query nor serialize anything.
+ * Every {@link ToDoChangedEvent} drops all of them.
+ */
+@Component
+@Profile("!reactive")
+public class ToDoListResponseCache {
+
+    public static class Entry {
+
+        private final ToDoListVersion version;
+
+        private final byte[] gzippedJson;
+
+        private Entry(ToDoListVersion version, byte[] gzippedJson) {
+            this.version = version;
+            this.gzippedJson = gzippedJson;
+        }
+
+        public ToDoListVersion getVersion() {
+            return version;
+        }
+
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    //keyed by the isCompleted filter, null for the whole list
+    private final Map<Boolean, Entry> entries = new HashMap<>();
+
+    //incremented by every change, a list loaded before a change must not be stored after it
+    private long generation;
+
+    public ToDoListResponseCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public synchronized Entry get(Boolean isCompleted) {
+        return entries.get(isCompleted);
+    }
+
+    /**
+     * Loads and serializes the list and keeps it unless the todos changed meanwhile
+     */
+    public Entry load(Boolean isCompleted, Callable<List<ToDoResponse>> loader) throws Exception {
+        long loadedGeneration;
+        synchronized (this) {
+            loadedGeneration = generation;
+        }
+        //kept until the next change, so it must not come from a replica that is still behind
+        List<ToDoResponse> todos = ReplicaContext.onPrimary(loader::call);
+        var entry = new Entry(ToDoListVersion.of(todos), gzip(objectMapper.writeValueAsBytes(todos)));
+        synchronized (this) {
+            if (loadedGeneration == generation) {
+                entries.put(isCompleted, entry);
+            }
+        }
+        return entry;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onChange(ToDoChangedEvent event) {
+        generation++;
+        entries.clear();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        var out = new ByteArrayOutputStream(bytes.length / 4);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
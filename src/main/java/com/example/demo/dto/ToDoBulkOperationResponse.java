@@ -0,0 +1,12 @@
+package com.example.demo.dto;
+
+public class ToDoBulkOperationResponse {
+	public int affected;
+
+	public ToDoBulkOperationResponse() {
+	}
+
+	public ToDoBulkOperationResponse(int affected) {
+		this.affected = affected;
+	}
+}
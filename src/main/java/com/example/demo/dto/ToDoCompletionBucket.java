@@ -0,0 +1,33 @@
+package com.example.demo.dto;
+
+import java.time.ZonedDateTime;
+import java.util.Locale;
+
+/**
+ * Number of todos completed in the hour or day starting at {@code start}, in UTC
+ */
+public class ToDoCompletionBucket {
+	public enum Size {
+		HOUR,
+		DAY;
+
+		/**
+		 * @throws IllegalArgumentException for anything but hour or day, in any case
+		 */
+		public static Size of(String name) {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	public ZonedDateTime start;
+
+	public long count;
+
+	public ToDoCompletionBucket() {
+	}
+
+	public ToDoCompletionBucket(ZonedDateTime start, long count) {
+		this.start = start;
+		this.count = count;
+	}
+}
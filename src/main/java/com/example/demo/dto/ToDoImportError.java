@@ -0,0 +1,15 @@
+package com.example.demo.dto;
+
+public class ToDoImportError {
+	public long line;
+
+	public String message;
+
+	public ToDoImportError() {
+	}
+
+	public ToDoImportError(long line, String message) {
+		this.line = line;
+		this.message = message;
+	}
+}
@@ -0,0 +1,13 @@
+package com.example.demo.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ToDoImportResponse {
+	public long imported;
+
+	public long skipped;
+
+	//only the first rows that were skipped, skipped counts all of them
+	public List<ToDoImportError> errors = new ArrayList<>();
+}
@@ -0,0 +1,38 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * Cheap fingerprint of a list of todos. Every write draws a version higher than all before it, so adding or
+ * modifying a todo raises the highest version and removing one lowers the count. The sum catches a write that
+ * commits after one with a higher version.
+ */
+public class ToDoListVersion {
+	public long count;
+
+	public long maxVersion;
+
+	public long versionSum;
+
+	public ToDoListVersion() {
+	}
+
+	/**
+	 * Used by the aggregate query of the repository, which yields nulls for an empty table
+	 */
+	public ToDoListVersion(Long count, Long maxVersion, Long versionSum) {
+		this.count = count == null ? 0 : count;
+		this.maxVersion = maxVersion == null ? 0 : maxVersion;
+		this.versionSum = versionSum == null ? 0 : versionSum;
+	}
+
+	public static ToDoListVersion of(List<ToDoResponse> todos) {
+		var result = new ToDoListVersion();
+		for (ToDoResponse todo : todos) {
+			result.count++;
+			result.maxVersion = Math.max(result.maxVersion, todo.version);
+			result.versionSum += todo.version;
+		}
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+public class ToDoPageResponse {
+	@NotNull
+	public List<ToDoResponse> items;
+
+	/**
+	 * Id of the last item on this page, to be passed as {@code after} to fetch the next one,
+	 * or {@code null} when there are no more items
+	 */
+	public Long nextCursor;
+}
@@ -4,6 +4,8 @@ import java.time.ZonedDateTime;
 
 import javax.validation.constraints.NotNull;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class ToDoResponse {
 	@NotNull
 	public Long id;
@@ -12,4 +14,23 @@ public class ToDoResponse {
 	public String text;
 
 	public ZonedDateTime completedAt;
+
+	/**
+	 * Sent as the ETag header instead of being part of the body
+	 */
+	@JsonIgnore
+	public long version;
+
+	public ToDoResponse() {
+	}
+
+	/**
+	 * Used by the constructor expressions of the repository read queries
+	 */
+	public ToDoResponse(Long id, String text, ZonedDateTime completedAt, long version) {
+		this.id = id;
+		this.text = text;
+		this.completedAt = completedAt;
+		this.version = version;
+	}
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package com.example.demo.dto;
 
+import com.example.demo.model.ToDoEntity;
+
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 public class ToDoSaveRequest {
 	public Long id;
 
 	@NotNull
+	@Size(max = ToDoEntity.MAX_TEXT_LENGTH)
 	public String text;
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.example.demo.dto.mapper;
 
 import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoArchivedEntity;
 import com.example.demo.model.ToDoEntity;
 
 public class ToDoEntityToResponseMapper {
@@ -11,6 +12,14 @@ public class ToDoEntityToResponseMapper {
 		result.id = todoEntity.getId();
 		result.text = todoEntity.getText();
 		result.completedAt = todoEntity.getCompletedAt();
+		result.version = todoEntity.getVersion();
 		return result;
 	}
+
+	public static ToDoResponse map(ToDoArchivedEntity archivedEntity) {
+		if (archivedEntity == null)
+			return null;
+		return new ToDoResponse(archivedEntity.getId(), archivedEntity.getText(),
+				archivedEntity.getCompletedAt(), archivedEntity.getVersion());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.example.demo.event;
+
+import com.example.demo.dto.ToDoResponse;
+
+import java.util.List;
+
+/**
+ * Published by {@link com.example.demo.service.ToDoService} for every change of todos
+ * and by {@link com.example.demo.service.ToDoArchiver} for every archived chunk.
+ * Listeners should use {@code @TransactionalEventListener} so they only see committed changes.
+ */
+public class ToDoChangedEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        COMPLETED,
+        CANCELLED,
+        DELETED,
+        ALL_DELETED,
+        /**
+         * Bulk completion or cancellation of an unknown set of todos
+         */
+        BULK_UPDATED,
+        /**
+         * Completed todos moved to the archive, see {@link com.example.demo.service.ToDoArchiver}
+         */
+        ARCHIVED
+    }
+
+    private final Type type;
+
+    private final List<ToDoResponse> todos;
+
+    private final Long id;
+
+    private ToDoChangedEvent(Type type, List<ToDoResponse> todos, Long id) {
+        this.type = type;
+        this.todos = todos;
+        this.id = id;
+    }
+
+    public static ToDoChangedEvent created(List<ToDoResponse> todos) {
+        return new ToDoChangedEvent(Type.CREATED, todos, null);
+    }
+
+    public static ToDoChangedEvent updated(List<ToDoResponse> todos) {
+        return new ToDoChangedEvent(Type.UPDATED, todos, null);
+    }
+
+    public static ToDoChangedEvent completed(ToDoResponse todo) {
+        return new ToDoChangedEvent(Type.COMPLETED, List.of(todo), null);
+    }
+
+    public static ToDoChangedEvent cancelled(ToDoResponse todo) {
+        return new ToDoChangedEvent(Type.CANCELLED, List.of(todo), null);
+    }
+
+    public static ToDoChangedEvent deleted(Long id) {
+        return new ToDoChangedEvent(Type.DELETED, List.of(), id);
+    }
+
+    public static ToDoChangedEvent allDeleted() {
+        return new ToDoChangedEvent(Type.ALL_DELETED, List.of(), null);
+    }
+
+    public static ToDoChangedEvent bulkUpdated() {
+        return new ToDoChangedEvent(Type.BULK_UPDATED, List.of(), null);
+    }
+
+    public static ToDoChangedEvent archived(List<ToDoResponse> todos) {
+        return new ToDoChangedEvent(Type.ARCHIVED, todos, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Todos as they were after the change, empty for {@link Type#DELETED}, {@link Type#ALL_DELETED}
+     * and {@link Type#BULK_UPDATED}
+     */
+    public List<ToDoResponse> getTodos() {
+        return todos;
+    }
+
+    /**
+     * Id of the deleted todo, null unless the type is {@link Type#DELETED}
+     */
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.demo.event;
+
+import com.example.demo.dto.ToDoResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent events for every committed change of todos.
+ * Changes are appended to a ring buffer of {@code todo.events.buffer-size} entries numbered with a sequence,
+ * which is the SSE id. Subscribers read the ring at their own pace, each on a dispatch thread of its own
+ * while it has entries to send, so writers only ever append. A subscriber whose next entry has been overwritten
+ * is disconnected by the writer that overwrote it, even while its thread is stuck in a send to a slow client,
+ * and can resume with {@code Last-Event-ID} as long as the ring still holds the entries after it.
+ * At most {@code todo.events.max-subscribers} clients are subscribed, which is also the number of dispatch
+ * threads; more are rejected with a {@link TaskRejectedException}.
+ */
+@Component
+@Profile("!reactive")
+public class ToDoEventFeed {
+
+    /**
+     * Sent instead of the missed events when a subscriber resumes from an id the ring no longer holds,
+     * the client should reload the todos
+     */
+    public static final String RESET = "reset";
+
+    private static final int MAX_BATCH = 100;
+
+    private final Entry[] ring;
+
+    private final long timeoutMs;
+
+    //sequence of the next appended entry, the ring holds the entries from nextSequence - ring.length on
+    private long nextSequence = 1;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private final Counter dropped;
+
+    private final int maxSubscribers;
+
+    private final ThreadPoolExecutor dispatcher;
+
+    public ToDoEventFeed(MeterRegistry meterRegistry,
+                         @Value("${todo.events.buffer-size:1024}") int bufferSize,
+                         @Value("${todo.events.timeout-ms:1800000}") long timeoutMs,
+                         @Value("${todo.events.max-subscribers:256}") int maxSubscribers) {
+        this.ring = new Entry[bufferSize];
+        this.timeoutMs = timeoutMs;
+        this.maxSubscribers = maxSubscribers;
+        this.dropped = meterRegistry.counter("todo.events.dropped");
+        meterRegistry.gauge("todo.events.subscribers", subscribers, List::size);
+        var threads = new AtomicInteger();
+        //a send blocks until the client takes the data, so every subscriber can have a thread, but no more;
+        //idle threads end, work beyond them waits for one, like the completion of a disconnected subscriber
+        this.dispatcher = new ThreadPoolExecutor(maxSubscribers, maxSubscribers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            var thread = new Thread(runnable, "todo-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param lastEventId id of the last event the client has seen, the events after it are sent first
+     * @throws TaskRejectedException when {@code todo.events.max-subscribers} clients are subscribed already
+     */
+    public SseEmitter subscribe(@Nullable Long lastEventId) throws IOException {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new TaskRejectedException("No more than " + maxSubscribers + " subscribers to todo events");
+        }
+        var emitter = new SseEmitter(timeoutMs);
+        long first;
+        boolean missed;
+        synchronized (this) {
+            long oldest = Math.max(1, nextSequence - ring.length);
+            //an id from before a restart or already overwritten cannot be resumed from
+            missed = lastEventId != null && (lastEventId + 1 < oldest || lastEventId >= nextSequence);
+            first = lastEventId == null || missed ? nextSequence : lastEventId + 1;
+        }
+        var subscriber = new Subscriber(emitter, first);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        if (missed) {
+            emitter.send(SseEmitter.event().name(RESET).data(Map.of(), MediaType.APPLICATION_JSON));
+        }
+        subscribers.add(subscriber);
+        dispatch(subscriber);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(ToDoChangedEvent event) {
+        String name = event.getType().name().toLowerCase().replace('_', '-');
+        long oldest;
+        synchronized (this) {
+            switch (event.getType()) {
+                case DELETED:
+                    append(name, Map.of("id", event.getId()));
+                    break;
+                case ALL_DELETED:
+                case BULK_UPDATED:
+                    append(name, Map.of());
+                    break;
+                default:
+                    for (ToDoResponse todo : event.getTodos()) {
+                        append(name, todo);
+                    }
+                    break;
+            }
+            oldest = nextSequence - ring.length;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.next < oldest) {
+                //its drain loop may be stuck in a send, so it would only notice once the client takes the data
+                disconnect(subscriber);
+            } else {
+                dispatch(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Disconnects a subscriber that fell further behind than the ring holds,
+     * the client resumes or reloads after reconnecting
+     */
+    private void disconnect(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            dropped.increment();
+            //completing waits for a send that is still running, the writer must not
+            dispatcher.execute(subscriber.emitter::complete);
+        }
+    }
+
+    private void append(String name, Object data) {
+        long sequence = nextSequence++;
+        ring[(int) (sequence % ring.length)] = new Entry(sequence, name, data);
+    }
+
+    /**
+     * Entries from the given sequence on, null when they have already been overwritten
+     */
+    private synchronized List<Entry> read(long from) {
+        if (from < nextSequence - ring.length) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (long sequence = from; sequence < nextSequence && entries.size() < MAX_BATCH; sequence++) {
+            entries.add(ring[(int) (sequence % ring.length)]);
+        }
+        return entries;
+    }
+
+    private synchronized boolean hasEntriesFrom(long sequence) {
+        return sequence < nextSequence;
+    }
+
+    private void dispatch(Subscriber subscriber) {
+        //at most one running send loop per subscriber, a slow one only holds up its own thread
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            List<Entry> entries = read(subscriber.next);
+            if (entries == null) {
+                disconnect(subscriber);
+                return;
+            }
+            if (entries.isEmpty()) {
+                subscriber.scheduled.set(false);
+                //an entry appended after the read above may have found the subscriber still scheduled
+                if (hasEntriesFrom(subscriber.next) && subscriber.scheduled.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            try {
+                for (Entry entry : entries) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(Long.toString(entry.sequence))
+                            .name(entry.name)
+                            .data(entry.data, MediaType.APPLICATION_JSON));
+                    subscriber.next = entry.sequence + 1;
+                }
+            } catch (IOException | IllegalStateException e) {
+                //the client went away, the emitter callbacks are not called for failed sends
+                subscribers.remove(subscriber);
+                subscriber.emitter.completeWithError(e);
+                return;
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private static class Entry {
+
+        private final long sequence;
+
+        private final String name;
+
+        private final Object data;
+
+        private Entry(long sequence, String name, Object data) {
+            this.sequence = sequence;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        //only written by the drain loop that holds scheduled, writers read it to find subscribers that fell behind
+        private volatile long next;
+
+        private Subscriber(SseEmitter emitter, long next) {
+            this.emitter = emitter;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.exception;
+
+public class ToDoConflictException extends Exception {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4719470625583419013L;
+
+	public ToDoConflictException(Long id, String message) {
+		super(String.format("Todo with id %d %s", id, message));
+	}
+}
@@ -0,0 +1,30 @@
+package com.example.demo.exception;
+
+import com.example.demo.dto.ToDoResponse;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Saving todos on several shards failed on some of them, the todos of the other shards are saved
+ */
+public class ToDoPartiallySavedException extends RuntimeException {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 6204874375014553298L;
+
+	private final transient List<ToDoResponse> saved;
+
+	public ToDoPartiallySavedException(List<ToDoResponse> saved, RuntimeException cause) {
+		super(String.format("Saved %d of %d todos", saved.stream().filter(Objects::nonNull).count(), saved.size()), cause);
+		this.saved = saved;
+	}
+
+	/**
+	 * The saved todos in the order of the requests, null for those that were not saved
+	 */
+	public List<ToDoResponse> getSaved() {
+		return saved;
+	}
+}
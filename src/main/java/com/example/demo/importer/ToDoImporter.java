@@ -0,0 +1,273 @@
+package com.example.demo.importer;
+
+import com.example.demo.dto.ToDoImportError;
+import com.example.demo.dto.ToDoImportResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoPartiallySavedException;
+import com.example.demo.service.ToDoService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Imports todos from CSV or NDJSON read incrementally, so only one batch is held in memory at a time.
+ * Every {@code todo.import.batch-size} valid rows are upserted in their own transaction,
+ * rows that fail validation or cannot be saved are skipped and reported with their line number.
+ */
+@Component
+public class ToDoImporter {
+
+    public enum Format {
+        /**
+         * Optional header with an {@code id} and a {@code text} column, otherwise the columns are id and text
+         * or just text when there is a single one
+         */
+        CSV,
+        /**
+         * One {@link ToDoSaveRequest} as JSON per line
+         */
+        NDJSON;
+
+        public static Format of(MediaType mediaType) {
+            if (mediaType.isCompatibleWith(MediaType.parseMediaType("text/csv"))) {
+                return CSV;
+            }
+            if (mediaType.isCompatibleWith(MediaType.parseMediaType("application/x-ndjson"))) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Cannot import " + mediaType);
+        }
+
+        public static Format of(String fileName) {
+            return fileName.toLowerCase().endsWith(".csv") ? CSV : NDJSON;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ToDoImporter.class);
+
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private final ToDoService toDoService;
+
+    private final Validator validator;
+
+    private final ObjectReader requestReader;
+
+    private final int batchSize;
+
+    private final int maxReportedErrors;
+
+    private final Counter importedRows;
+
+    private final Counter skippedRows;
+
+    public ToDoImporter(ToDoService toDoService,
+                        Validator validator,
+                        ObjectMapper objectMapper,
+                        MeterRegistry meterRegistry,
+                        @Value("${todo.import.batch-size:1000}") int batchSize,
+                        @Value("${todo.import.max-reported-errors:100}") int maxReportedErrors) {
+        this.toDoService = toDoService;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(ToDoSaveRequest.class);
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.importedRows = meterRegistry.counter("todo.import.rows", "result", "imported");
+        this.skippedRows = meterRegistry.counter("todo.import.rows", "result", "skipped");
+    }
+
+    public ToDoImportResponse importTodos(Reader reader, Format format) throws IOException {
+        var batch = new Batch();
+        var buffered = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        if (format == Format.CSV) {
+            readCsv(buffered, batch);
+        } else {
+            readNdjson(buffered, batch);
+        }
+        batch.flush();
+        log.info("Import finished: {} todos imported, {} rows skipped",
+                batch.response.imported, batch.response.skipped);
+        return batch.response;
+    }
+
+    private void readCsv(BufferedReader reader, Batch batch) throws IOException {
+        var csv = new CsvReader(reader);
+        int idColumn = 0;
+        int textColumn = 1;
+        boolean first = true;
+        while (true) {
+            long line = csv.getLine();
+            List<String> fields;
+            try {
+                fields = csv.readRecord();
+            } catch (IllegalArgumentException e) {
+                batch.skip(line, e.getMessage());
+                continue;
+            }
+            if (fields == null) {
+                return;
+            }
+            if (first) {
+                first = false;
+                List<String> header = fields.stream().map(String::trim).map(String::toLowerCase)
+                        .collect(Collectors.toList());
+                if (header.contains("text")) {
+                    idColumn = header.indexOf("id");
+                    textColumn = header.indexOf("text");
+                    continue;
+                }
+                if (fields.size() == 1) {
+                    idColumn = -1;
+                    textColumn = 0;
+                }
+            }
+            if (fields.size() == 1 && fields.get(0).isBlank()) {
+                continue;
+            }
+            var request = new ToDoSaveRequest();
+            request.text = textColumn < fields.size() ? fields.get(textColumn) : null;
+            String id = idColumn >= 0 && idColumn < fields.size() ? fields.get(idColumn).trim() : "";
+            if (!id.isEmpty()) {
+                try {
+                    request.id = Long.valueOf(id);
+                } catch (NumberFormatException e) {
+                    batch.skip(line, "id: not a number");
+                    continue;
+                }
+            }
+            batch.add(line, request);
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, Batch batch) throws IOException {
+        long line = 0;
+        String json;
+        while ((json = reader.readLine()) != null) {
+            line++;
+            if (json.isBlank()) {
+                continue;
+            }
+            try {
+                ToDoSaveRequest request = requestReader.readValue(json);
+                //a line holding just null parses to no request at all
+                if (request == null) {
+                    batch.skip(line, "not a todo");
+                    continue;
+                }
+                batch.add(line, request);
+            } catch (JsonProcessingException e) {
+                batch.skip(line, e.getOriginalMessage());
+            }
+        }
+    }
+
+    private class Batch {
+
+        private final ToDoImportResponse response = new ToDoImportResponse();
+
+        private final List<ToDoSaveRequest> requests = new ArrayList<>(batchSize);
+
+        private final List<Long> lines = new ArrayList<>(batchSize);
+
+        private long rows;
+
+        void add(long line, ToDoSaveRequest request) {
+            Set<ConstraintViolation<ToDoSaveRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                skip(line, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+                return;
+            }
+            requests.add(request);
+            lines.add(line);
+            if (requests.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void skip(long line, String message) {
+            response.skipped++;
+            skippedRows.increment();
+            if (response.errors.size() < maxReportedErrors) {
+                response.errors.add(new ToDoImportError(line, message));
+            }
+            progress(1);
+        }
+
+        void flush() {
+            if (requests.isEmpty()) {
+                return;
+            }
+            List<Integer> failed;
+            try {
+                toDoService.upsertAll(requests);
+                imported(requests.size());
+                failed = List.of();
+            } catch (ToDoPartiallySavedException e) {
+                //the shards that saved their rows have committed, saving those again would duplicate new todos
+                failed = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    if (e.getSaved().get(i) == null) {
+                        failed.add(i);
+                    }
+                }
+                imported(requests.size() - failed.size());
+            } catch (RuntimeException e) {
+                //the whole transaction was rolled back
+                failed = IntStream.range(0, requests.size()).boxed().collect(Collectors.toList());
+            }
+            //find the rows the database refuses one by one
+            for (int i : failed) {
+                try {
+                    toDoService.upsertAll(List.of(requests.get(i)));
+                    imported(1);
+                } catch (RuntimeException rowFailure) {
+                    skip(lines.get(i), "cannot be saved: " + rootCause(rowFailure).getMessage());
+                }
+            }
+            requests.clear();
+            lines.clear();
+        }
+
+        private void imported(int count) {
+            response.imported += count;
+            importedRows.increment(count);
+            progress(count);
+        }
+
+        private void progress(int count) {
+            long before = rows;
+            rows += count;
+            if (rows / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+                log.info("Import in progress: {} todos imported, {} rows skipped", response.imported, response.skipped);
+            }
+        }
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null && e.getCause() != e) {
+            e = e.getCause();
+        }
+        return e;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demo.model;
+
+import javax.persistence.Basic;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+
+/**
+ * A completed todo moved out of the table of {@link ToDoEntity} by the archiver, with the id and version it had.
+ * Only written by the archiver, with plain SQL.
+ */
+@Entity
+@Table(name = "to_do_archive",
+        indexes = @Index(name = "to_do_archive_completed_at_idx", columnList = "completedAt"))
+public class ToDoArchivedEntity {
+
+    @Id
+    @NotNull
+    private Long id;
+
+    @Basic
+    @NotNull
+    private String text;
+
+    @Basic
+    @NotNull
+    private ZonedDateTime completedAt;
+
+    @Basic
+    private long version;
+
+    @Basic
+    @NotNull
+    private ZonedDateTime archivedAt;
+
+    public ToDoArchivedEntity() {
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ToDoArchivedEntity[id=%d, text='%s', completedAt='%s', archivedAt='%s']",
+                id, text, completedAt, archivedAt
+        );
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public ZonedDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ZonedDateTime getArchivedAt() {
+        return archivedAt;
+    }
+}
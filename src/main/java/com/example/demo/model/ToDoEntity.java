@@ -1,9 +1,20 @@
 package com.example.demo.model;
 
+import com.example.demo.sharding.ToDoIdGenerator;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Type;
+
 import javax.persistence.Basic;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -12,20 +23,42 @@ import java.time.ZonedDateTime;
  * ToDoEntity
  */
 @Entity
+//range filters only read the completed todos of the range, completion statistics only the second index
+@Table(indexes = {
+        @Index(name = "to_do_entity_completed_at_idx", columnList = "completedAt"),
+        @Index(name = "to_do_entity_completed_hour_idx", columnList = "completedHour, completedAt")
+})
 public class ToDoEntity {
 
+    public static final int MAX_TEXT_LENGTH = 255;
+
     @Id
     @NotNull
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "todo_seq")
+    @GenericGenerator(name = "todo_seq", strategy = "com.example.demo.sharding.ToDoIdGenerator", parameters = {
+            @Parameter(name = ToDoIdGenerator.SEQUENCE_PARAM, value = "todo_seq"),
+            @Parameter(name = ToDoIdGenerator.INCREMENT_PARAM, value = "50")
+    })
     private Long id;
 
     @Basic
     @NotNull
+    @Column(length = MAX_TEXT_LENGTH)
     private String text;
 
     @Basic
     private ZonedDateTime completedAt;
 
+    /**
+     * Hours since the epoch of {@link #completedAt}, written with it by every statement that sets it
+     */
+    @Basic
+    private Long completedHour;
+
+    @Version
+    @Type(type = "com.example.demo.model.ToDoVersionType")
+    private long version;
+
     public ToDoEntity() {
     }
 
@@ -46,6 +79,14 @@ public class ToDoEntity {
         this.id = id;
         this.text = text;
         this.completedAt = completedAt;
+        this.completedHour = hourOf(completedAt);
+    }
+
+    /**
+     * The bucket of {@code completedHour} for a completion time, null for none
+     */
+    public static Long hourOf(ZonedDateTime completedAt) {
+        return completedAt == null ? null : Math.floorDiv(completedAt.toEpochSecond(), 3600L);
     }
 
     @Override
@@ -73,13 +114,25 @@ public class ToDoEntity {
         return completedAt;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    @PrePersist
+    void drawVersion() {
+        //Hibernate only seeds versions below zero, which would make every todo with an id look new
+        version = ToDoVersionType.next();
+    }
+
     public ToDoEntity completeNow() {
         completedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        completedHour = hourOf(completedAt);
         return this;
     }
 
     public ToDoEntity cancelNow() {
         completedAt = null;
+        completedHour = null;
         return this;
     }
 }
\ No newline at end of file
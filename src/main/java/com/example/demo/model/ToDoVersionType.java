@@ -0,0 +1,33 @@
+package com.example.demo.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.type.LongType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of todos drawn from one counter for all todos of all shards, so every write gives the todo a version
+ * higher than any other todo had before. A list is then identified by its size and its highest version.
+ * Starts at the current time in microseconds, so versions keep growing across restarts.
+ */
+public class ToDoVersionType extends LongType {
+
+    private static final AtomicLong LAST = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * The version for the next write, for the statements that do not go through Hibernate
+     */
+    public static long next() {
+        return LAST.incrementAndGet();
+    }
+
+    @Override
+    public String getName() {
+        return "todo_version";
+    }
+
+    @Override
+    public Long next(Long current, SharedSessionContractImplementor session) {
+        return next();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.replica;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Lets a client read its own changes although the replicas lag behind: every request that may change todos
+ * sets a cookie with the time until which the reads of the client go to the primary,
+ * {@code todo.replicas.read-your-writes-ms} from now. Zero turns it off.
+ */
+@Component
+@Profile("replicas & !reactive")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE = "todo-primary-until";
+
+    private final long stickyMs;
+
+    public ReadYourWritesFilter(@Value("${todo.replicas.read-your-writes-ms:5000}") long stickyMs) {
+        this.stickyMs = stickyMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (stickyMs <= 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!isRead(request)) {
+            //set before the chain, the response may be committed when it returns
+            var cookie = new Cookie(COOKIE, Long.toString(now + stickyMs));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (stickyMs + 999) / 1000));
+            response.addCookie(cookie);
+        }
+        boolean primaryRequired = primaryRequiredUntil(request) > now;
+        ReplicaContext.setPrimaryRequired(primaryRequired);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaContext.setPrimaryRequired(false);
+        }
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method);
+    }
+
+    private static long primaryRequiredUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
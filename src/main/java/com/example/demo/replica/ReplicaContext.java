@@ -0,0 +1,67 @@
+package com.example.demo.replica;
+
+/**
+ * Whether the current thread has to read from the primary, set by {@link ReadYourWritesFilter}
+ * for clients that changed todos a moment ago and read by {@link ReplicaRoutingDataSource}
+ */
+public final class ReplicaContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private ReplicaContext() {
+    }
+
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    static void setPrimaryRequired(boolean primaryRequired) {
+        if (primaryRequired) {
+            PRIMARY_REQUIRED.set(true);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    /**
+     * Work that may throw a checked exception of its own
+     */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    /**
+     * Runs the work with reads from the primary, for results that are kept longer than a replica may lag behind
+     */
+    public static <T, E extends Exception> T onPrimary(Work<T, E> work) throws E {
+        boolean previous = isPrimaryRequired();
+        setPrimaryRequired(true);
+        try {
+            return work.call();
+        } finally {
+            setPrimaryRequired(previous);
+        }
+    }
+
+    /**
+     * Carries the flag of the submitting thread over to the thread that runs the task,
+     * for the executors the controllers hand their database work to
+     */
+    public static Runnable propagate(Runnable task) {
+        boolean primaryRequired = isPrimaryRequired();
+        if (!primaryRequired) {
+            return task;
+        }
+        return () -> {
+            boolean previous = isPrimaryRequired();
+            setPrimaryRequired(true);
+            try {
+                task.run();
+            } finally {
+                setPrimaryRequired(previous);
+            }
+        };
+    }
+}
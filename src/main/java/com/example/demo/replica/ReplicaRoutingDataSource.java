@@ -0,0 +1,159 @@
+package com.example.demo.replica;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out connections of the replicas to read-only transactions, in turns and skipping the replicas
+ * whose last health check failed, and connections of the primary to everything else.
+ * Reads go to the primary as well when no replica is healthy or the thread requires it, see {@link ReplicaContext}.
+ * Has to be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * so the read-only flag of the transaction is known when the connection is taken.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final DataSource primary;
+
+    private final List<DataSource> replicas;
+
+    private final boolean[] healthy;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "todo-replica-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long healthCheckIntervalMs) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.healthy = new boolean[replicas.size()];
+        //healthy until a check says otherwise, so only real changes are logged
+        Arrays.fill(healthy, true);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        //not a bean of its own, see ReplicaConfig
+        afterPropertiesSet();
+        checkHealth();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth,
+                healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public synchronized int healthyCount() {
+        int count = 0;
+        for (boolean replicaHealthy : healthy) {
+            if (replicaHealthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Validates a connection of every replica, reads skip the ones that fail until they pass again
+     */
+    public void checkHealth() {
+        for (int i = 0; i < replicas.size(); i++) {
+            boolean valid;
+            try (Connection connection = replicas.get(i).getConnection()) {
+                valid = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException | RuntimeException e) {
+                valid = false;
+            }
+            setHealthy(i, valid);
+        }
+    }
+
+    private synchronized void setHealthy(int replica, boolean valid) {
+        if (healthy[replica] != valid) {
+            if (valid) {
+                log.info("Replica {} is healthy again", replica);
+            } else {
+                log.warn("Replica {} is unhealthy, reading from the others", replica);
+            }
+        }
+        healthy[replica] = valid;
+    }
+
+    private synchronized boolean isHealthy(int replica) {
+        return healthy[replica];
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return primary.getConnection();
+        }
+        int replica = (Integer) key;
+        try {
+            return replicas.get(replica).getConnection();
+        } catch (SQLException e) {
+            //failed between two health checks, the read is still served
+            setHealthy(replica, false);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaContext.isPrimaryRequired()) {
+            return PRIMARY;
+        }
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            int replica = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+            if (isHealthy(replica)) {
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public void close() throws Exception {
+        healthChecker.shutdownNow();
+        List<DataSource> targets = new ArrayList<>(replicas);
+        targets.add(primary);
+        for (DataSource dataSource : targets) {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            }
+        }
+    }
+}
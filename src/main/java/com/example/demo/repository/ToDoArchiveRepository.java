@@ -0,0 +1,26 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoArchivedEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+/**
+ * Archived todos, which only the archiver writes; they are read on request and deleted along with the todos
+ */
+public interface ToDoArchiveRepository extends JpaRepository<ToDoArchivedEntity, Long>,
+        JpaSpecificationExecutor<ToDoArchivedEntity> {
+
+    @Query("select new com.example.demo.dto.ToDoResponse(t.id, t.text, t.completedAt, t.version) " +
+            "from ToDoArchivedEntity t where t.id = :id")
+    Optional<ToDoResponse> findResponseById(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ToDoArchivedEntity t where t.id = :id")
+    int deleteOneById(@Param("id") Long id);
+}
@@ -1,10 +1,91 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.ToDoResponse;
 import com.example.demo.model.ToDoEntity;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-public interface ToDoRepository extends JpaRepository<ToDoEntity, Long>, JpaSpecificationExecutor<ToDoEntity> {
+import javax.persistence.QueryHint;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface ToDoRepository extends JpaRepository<ToDoEntity, Long>, JpaSpecificationExecutor<ToDoEntity>,
+        ToDoRepositoryCustom {
+
+    @Query("select new com.example.demo.dto.ToDoResponse(t.id, t.text, t.completedAt, t.version) " +
+            "from ToDoEntity t where t.id = :id")
+    Optional<ToDoResponse> findResponseById(@Param("id") Long id);
+
+    @Query("select t.version from ToDoEntity t where t.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select t from ToDoEntity t order by t.id")
+    Stream<ToDoEntity> streamAll();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select t from ToDoEntity t where t.completedAt is not null order by t.id")
+    Stream<ToDoEntity> streamAllCompleted();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select t from ToDoEntity t where t.completedAt is null order by t.id")
+    Stream<ToDoEntity> streamAllInProgress();
+
+    default int completeById(Long id, ZonedDateTime completedAt, long version) {
+        return completeById(id, completedAt, ToDoEntity.hourOf(completedAt), version);
+    }
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = :completedAt, t.completedHour = :completedHour, t.version = :version " +
+            "where t.id = :id and t.completedAt is null")
+    int completeById(@Param("id") Long id, @Param("completedAt") ZonedDateTime completedAt,
+                     @Param("completedHour") Long completedHour, @Param("version") long version);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = null, t.completedHour = null, t.version = :version " +
+            "where t.id = :id and t.completedAt is not null")
+    int cancelById(@Param("id") Long id, @Param("version") long version);
+
+    default int completeAllById(Collection<Long> ids, ZonedDateTime completedAt, long version) {
+        return completeAllById(ids, completedAt, ToDoEntity.hourOf(completedAt), version);
+    }
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = :completedAt, t.completedHour = :completedHour, t.version = :version " +
+            "where t.id in :ids and t.completedAt is null")
+    int completeAllById(@Param("ids") Collection<Long> ids, @Param("completedAt") ZonedDateTime completedAt,
+                        @Param("completedHour") Long completedHour, @Param("version") long version);
+
+    default int completeAllInProgress(ZonedDateTime completedAt, long version) {
+        return completeAllInProgress(completedAt, ToDoEntity.hourOf(completedAt), version);
+    }
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = :completedAt, t.completedHour = :completedHour, t.version = :version " +
+            "where t.completedAt is null")
+    int completeAllInProgress(@Param("completedAt") ZonedDateTime completedAt, @Param("completedHour") Long completedHour,
+                              @Param("version") long version);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = null, t.completedHour = null, t.version = :version " +
+            "where t.id in :ids and t.completedAt is not null")
+    int cancelAllById(@Param("ids") Collection<Long> ids, @Param("version") long version);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ToDoEntity t set t.completedAt = null, t.completedHour = null, t.version = :version " +
+            "where t.completedAt is not null")
+    int cancelAllCompleted(@Param("version") long version);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ToDoEntity t where t.id = :id")
+    int deleteOneById(@Param("id") Long id);
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoListVersion;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoEntity;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ToDoRepositoryCustom {
+
+    /**
+     * Selects the todos matching the specification straight into responses, without managed entities
+     */
+    List<ToDoResponse> findAllResponses(Specification<ToDoEntity> specification);
+
+    /**
+     * Returns at most {@code limit} todos matching the specification, ordered by id.
+     * Unlike {@code findAll(Specification, Pageable)} no count query is issued.
+     */
+    List<ToDoResponse> findAllResponsesOrderedById(Specification<ToDoEntity> specification, int limit);
+
+    /**
+     * Aggregates count, highest version and sum of versions of the todos matching the specification,
+     * the same fingerprint {@link ToDoListVersion#of} computes from a loaded list
+     */
+    ToDoListVersion findListVersion(Specification<ToDoEntity> specification);
+
+    /**
+     * Counts the completed todos matching the specification per hour or day of {@code completedAt} in UTC
+     * with a GROUP BY on {@code completedHour} in the database, days added up from their hours,
+     * ordered by the start of the bucket.
+     * Buckets without todos are left out.
+     */
+    List<ToDoCompletionBucket> countCompletions(Specification<ToDoEntity> specification, ToDoCompletionBucket.Size size);
+
+    /**
+     * Sets the text of the todo with the id and gives it a new version or, when there is none,
+     * inserts a todo with a newly generated id, in a single statement that returns the row as written.
+     * Empty when the database has no such statement or {@code todo.upsert.native} is false.
+     */
+    Optional<ToDoResponse> upsertById(Long id, String text);
+
+    /**
+     * Removes the todo from the persistence context so that streamed entities can be garbage collected
+     */
+    void detach(ToDoEntity todo);
+}
@@ -0,0 +1,190 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoListVersion;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.model.ToDoVersionType;
+import com.example.demo.sharding.ShardContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.ZonedDateTimeType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class ToDoRepositoryCustomImpl implements ToDoRepositoryCustom {
+
+    /**
+     * A whole value of the shard's sequence, which the id generator would turn into a block of ids, spread like
+     * {@link com.example.demo.sharding.ToDoIdGenerator} does. No block the generator hands out contains it.
+     */
+    private static final String NEW_ID = "(next value for todo_seq) * :shards + :shard";
+
+    /**
+     * Rows of H2 1.4.200 updated by MERGE USING cannot be selected from a data change delta table,
+     * MERGE KEY is used instead with the current row read by its query. The row has to be locked on its own,
+     * FOR UPDATE of a join locks nothing and concurrent upserts would lose version increments.
+     * A new id is only drawn from the sequence when there is no row to update, see {@link #NEW_ID}.
+     */
+    private static final String H2_UPSERT = "select id, text, completed_at, version from final table (" +
+            "merge into to_do_entity (id, text, completed_at, version) key (id) " +
+            "select coalesce(t.id, " + NEW_ID + "), :text, t.completed_at, :version " +
+            "from (select cast(:id as bigint) as id) r left join (" +
+            "select id, completed_at, version from to_do_entity where id = :id for update) t on t.id = r.id)";
+
+    private static final String POSTGRESQL_UPSERT = "with updated as (" +
+            "update to_do_entity set text = :text, version = :version where id = :id " +
+            "returning id, text, completed_at, version), " +
+            "inserted as (" +
+            "insert into to_do_entity (id, text, completed_at, version) " +
+            "select " + NEW_ID + ", :text, null, :version where not exists (select 1 from updated) " +
+            "returning id, text, completed_at, version) " +
+            "select * from updated union all select * from inserted";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${todo.upsert.native:true}")
+    private boolean nativeUpsert;
+
+    @Override
+    public List<ToDoResponse> findAllResponses(Specification<ToDoEntity> specification) {
+        return entityManager.createQuery(selectResponses(specification, false))
+                .getResultList();
+    }
+
+    @Override
+    public List<ToDoResponse> findAllResponsesOrderedById(Specification<ToDoEntity> specification, int limit) {
+        return entityManager.createQuery(selectResponses(specification, true))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public ToDoListVersion findListVersion(Specification<ToDoEntity> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ToDoListVersion> query = cb.createQuery(ToDoListVersion.class);
+        Root<ToDoEntity> root = query.from(ToDoEntity.class);
+        query.select(cb.construct(
+                ToDoListVersion.class,
+                cb.count(root),
+                cb.max(root.<Long>get("version")),
+                cb.sum(root.<Long>get("version"))
+        ));
+        Predicate predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    @Override
+    public List<ToDoCompletionBucket> countCompletions(Specification<ToDoEntity> specification,
+                                                       ToDoCompletionBucket.Size size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<ToDoEntity> root = query.from(ToDoEntity.class);
+        //grouped on the persisted hour, which the completed hour index holds next to the completion time and in
+        //order, so the count never reads the rows themselves; days are added up from at most 24 of those hours
+        Expression<Long> hour = root.get("completedHour");
+        query.multiselect(hour, cb.count(root));
+        Predicate predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.groupBy(hour);
+        query.orderBy(cb.asc(hour));
+        long hours = size == ToDoCompletionBucket.Size.HOUR ? 1 : 24;
+        List<ToDoCompletionBucket> buckets = new ArrayList<>();
+        entityManager.createQuery(query).getResultStream().forEach(tuple -> {
+            var start = Instant.ofEpochSecond(Math.floorDiv(tuple.get(0, Long.class), hours) * hours * 3600L)
+                    .atZone(ZoneOffset.UTC);
+            var last = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+            if (last != null && last.start.equals(start)) {
+                last.count += tuple.get(1, Long.class);
+            } else {
+                buckets.add(new ToDoCompletionBucket(start, tuple.get(1, Long.class)));
+            }
+        });
+        return buckets;
+    }
+
+    @Override
+    public Optional<ToDoResponse> upsertById(Long id, String text) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        String sql = nativeUpsert ? upsertSql(session.getJdbcServices().getDialect()) : null;
+        if (sql == null) {
+            return Optional.empty();
+        }
+        //the statement runs on the connection of the bound shard, so it draws from the sequence of that shard
+        ShardContext.Shard shard = ShardContext.current();
+        Object[] row = (Object[]) session.createNativeQuery(sql)
+                .setParameter("id", id)
+                .setParameter("text", text)
+                .setParameter("shards", shard == null ? 1 : shard.getCount())
+                .setParameter("shard", shard == null ? 0 : shard.getIndex())
+                .setParameter("version", ToDoVersionType.next())
+                .addScalar("id", LongType.INSTANCE)
+                .addScalar("text", StringType.INSTANCE)
+                //read in the time zone of hibernate.jdbc.time_zone, like the mapped column
+                .addScalar("completed_at", ZonedDateTimeType.INSTANCE)
+                .addScalar("version", LongType.INSTANCE)
+                .getSingleResult();
+        return Optional.of(new ToDoResponse((Long) row[0], (String) row[1], (ZonedDateTime) row[2], (Long) row[3]));
+    }
+
+    private static String upsertSql(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return H2_UPSERT;
+        }
+        if (dialect instanceof PostgreSQL81Dialect) {
+            return POSTGRESQL_UPSERT;
+        }
+        return null;
+    }
+
+    @Override
+    public void detach(ToDoEntity todo) {
+        entityManager.detach(todo);
+    }
+
+    private CriteriaQuery<ToDoResponse> selectResponses(Specification<ToDoEntity> specification, boolean orderById) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ToDoResponse> query = cb.createQuery(ToDoResponse.class);
+        Root<ToDoEntity> root = query.from(ToDoEntity.class);
+        query.select(cb.construct(
+                ToDoResponse.class,
+                root.get("id"),
+                root.get("text"),
+                root.get("completedAt"),
+                root.get("version")
+        ));
+        Predicate predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (orderById) {
+            query.orderBy(cb.asc(root.get("id")));
+        }
+        return query;
+    }
+}
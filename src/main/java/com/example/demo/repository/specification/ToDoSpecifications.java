@@ -3,6 +3,11 @@ package com.example.demo.repository.specification;
 import com.example.demo.model.ToDoEntity;
 import org.springframework.data.jpa.domain.Specification;
 
+import javax.persistence.criteria.Expression;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+
 public class ToDoSpecifications {
     private ToDoSpecifications() {
     }
@@ -14,4 +19,45 @@ public class ToDoSpecifications {
     public static Specification<ToDoEntity> isInProgress() {
         return Specification.not(isCompleted());
     }
-}
+
+    /**
+     * Keyset condition {@code id > after}; matches everything when {@code after} is null
+     */
+    public static Specification<ToDoEntity> isAfter(Long after) {
+        return (root, query, cb) -> after == null ? null : cb.greaterThan(root.get("id"), after);
+    }
+
+    /**
+     * Completed at or after the given time; matches everything when it is null.
+     * Applies to archived todos as well.
+     */
+    public static <T> Specification<T> completedAfter(ZonedDateTime from) {
+        return (root, query, cb) -> from == null ? null : cb.greaterThanOrEqualTo(root.get("completedAt"), from);
+    }
+
+    /**
+     * Completed before the given time; matches everything when it is null.
+     * Applies to archived todos as well.
+     */
+    public static <T> Specification<T> completedBefore(ZonedDateTime to) {
+        return (root, query, cb) -> to == null ? null : cb.lessThan(root.get("completedAt"), to);
+    }
+
+    /**
+     * Completed within the hours of the given times, either may be null; narrows a range of completion times
+     * to the hour buckets of the completion statistics index, completed todos only.
+     */
+    public static Specification<ToDoEntity> completedInHoursOf(ZonedDateTime from, ZonedDateTime to) {
+        return (root, query, cb) -> {
+            Expression<Long> hour = root.get("completedHour");
+            return cb.and(
+                    from == null ? cb.isNotNull(hour) : cb.greaterThanOrEqualTo(hour, ToDoEntity.hourOf(from)),
+                    to == null ? cb.conjunction() : cb.lessThanOrEqualTo(hour, ToDoEntity.hourOf(to))
+            );
+        };
+    }
+
+    public static Specification<ToDoEntity> hasIdIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+}
\ No newline at end of file
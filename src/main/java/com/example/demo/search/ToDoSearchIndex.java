@@ -0,0 +1,213 @@
+package com.example.demo.search;
+
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoRepository;
+import com.example.demo.sharding.ToDoShards;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index of the words in the text of todos.
+ * It is rebuilt from the repository on startup and kept up to date by {@link ToDoChangedEvent}s.
+ * A rebuild fills a fresh index and swaps it in; changes arriving meanwhile go to the current index
+ * and are replayed on the fresh one before the swap, so the snapshot never overwrites them.
+ */
+@Component
+public class ToDoSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ToDoRepository toDoRepository;
+
+    private final ToDoShards shards;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Postings index = new Postings();
+
+    //changes since the running rebuild started, null when there is none
+    private List<Consumer<Postings>> changesDuringRebuild;
+
+    public ToDoSearchIndex(ToDoRepository toDoRepository, ToDoShards shards) {
+        this.toDoRepository = toDoRepository;
+        this.shards = shards;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Postings rebuilt = new Postings();
+        boolean complete = false;
+        try {
+            shards.inTurn(true, shard -> {
+                try (Stream<ToDoEntity> todos = toDoRepository.streamAll()) {
+                    todos.forEach(todo -> {
+                        rebuilt.put(todo.getId(), termFrequencies(todo.getText()));
+                        toDoRepository.detach(todo);
+                    });
+                }
+            });
+            complete = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                //a failed rebuild keeps the current index, which got every change as well
+                if (complete) {
+                    changesDuringRebuild.forEach(change -> change.accept(rebuilt));
+                    index = rebuilt;
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(ToDoChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+            case UPDATED:
+                event.getTodos().forEach(todo -> put(todo.id, todo.text));
+                break;
+            case DELETED:
+                remove(event.getId());
+                break;
+            case ARCHIVED:
+                //archived todos are only read by id or in full lists, never searched
+                event.getTodos().forEach(todo -> remove(todo.id));
+                break;
+            case ALL_DELETED:
+                clear();
+                break;
+            default:
+                //completing and cancelling leave the text as it is
+                break;
+        }
+    }
+
+    public void put(Long id, String text) {
+        Map<String, Integer> frequencies = termFrequencies(text);
+        change(postings -> postings.put(id, frequencies));
+    }
+
+    public void remove(Long id) {
+        change(postings -> postings.remove(id));
+    }
+
+    public void clear() {
+        change(Postings::clear);
+    }
+
+    /**
+     * Ids of the todos containing any word of the query, best matches first.
+     * Matches are scored by tf-idf, equal scores are ordered by id.
+     */
+    public List<Long> search(String query) {
+        Set<String> queryTerms = termFrequencies(query).keySet();
+        Map<Long, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            int documents = index.terms.size();
+            for (String term : queryTerms) {
+                Map<Long, Integer> posting = index.postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1.0 + (double) documents / posting.size());
+                posting.forEach((id, frequency) -> scores.merge(id, frequency * idf, Double::sum));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        return ranked.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    private void change(Consumer<Postings> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(index);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    private static class Postings {
+
+        //term -> id of todo -> number of occurrences of the term in its text
+        private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+
+        //id of todo -> its distinct terms, to find the postings to drop when the todo changes
+        private final Map<Long, Set<String>> terms = new HashMap<>();
+
+        void put(Long id, Map<String, Integer> frequencies) {
+            remove(id);
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new HashMap<>()).put(id, frequency)
+            );
+            terms.put(id, frequencies.keySet());
+        }
+
+        void remove(Long id) {
+            Set<String> previous = terms.remove(id);
+            if (previous == null) {
+                return;
+            }
+            for (String term : previous) {
+                Map<Long, Integer> posting = postings.get(term);
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+
+        void clear() {
+            postings.clear();
+            terms.clear();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.demo.seed;
+
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.model.ToDoVersionType;
+import com.example.demo.sharding.ToDoShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.TimeZone;
+
+/**
+ * Fills the database with generated todos for load tests, with plain JDBC batches of {@code todo.seed.batch-size}
+ * rows, each batch in a transaction of its own. {@code todo.seed.completed-ratio} of them are completed at some
+ * time of the last {@code todo.seed.completed-within-days} days, their texts are {@code todo.seed.text-length.min}
+ * to {@code todo.seed.text-length.max} characters long. The same {@code todo.seed.random-seed} gives the same todos.
+ * Bypasses the caches and the search index, so it is meant for startup or an otherwise idle application.
+ */
+@Component
+public class ToDoSeeder {
+
+    public enum TextLength {
+        /**
+         * Every length between min and max equally often
+         */
+        UNIFORM,
+        /**
+         * Mostly short texts with a long tail up to max, a quarter of the way on average
+         */
+        SKEWED;
+
+        /**
+         * @throws IllegalArgumentException for anything but uniform or skewed, in any case
+         */
+        public static TextLength of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ToDoSeeder.class);
+
+    //as declared for the generator on ToDoEntity, every value of the sequence stands for a block of ids
+    private static final int SEQUENCE_INCREMENT = 50;
+
+    private static final String[] WORDS = {
+            "buy", "milk", "call", "mom", "fix", "the", "bike", "write", "report", "book", "flights", "to",
+            "trip", "pay", "rent", "water", "plants", "review", "pull", "request", "clean", "kitchen", "walk",
+            "dog", "renew", "passport", "plan", "sprint", "read", "chapter", "of", "and", "for", "before", "friday"
+    };
+
+    private static final int CORPUS_LENGTH = 1 << 16;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaction;
+
+    private final ToDoShards shards;
+
+    private final double completedRatio;
+
+    private final int minTextLength;
+
+    private final int maxTextLength;
+
+    private final TextLength textLength;
+
+    private final long completedWithinSeconds;
+
+    private final int batchSize;
+
+    private final long randomSeed;
+
+    public ToDoSeeder(JdbcTemplate jdbcTemplate,
+                      PlatformTransactionManager transactionManager,
+                      ToDoShards shards,
+                      @Value("${todo.seed.completed-ratio:0.5}") double completedRatio,
+                      @Value("${todo.seed.text-length.min:10}") int minTextLength,
+                      @Value("${todo.seed.text-length.max:100}") int maxTextLength,
+                      @Value("${todo.seed.text-length.distribution:uniform}") String textLength,
+                      @Value("${todo.seed.completed-within-days:30}") long completedWithinDays,
+                      @Value("${todo.seed.batch-size:10000}") int batchSize,
+                      @Value("${todo.seed.random-seed:42}") long randomSeed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.shards = shards;
+        this.completedRatio = completedRatio;
+        this.minTextLength = Math.max(1, minTextLength);
+        this.maxTextLength = Math.max(this.minTextLength, maxTextLength);
+        this.textLength = TextLength.of(textLength);
+        this.completedWithinSeconds = Math.max(1, completedWithinDays * 86_400);
+        this.batchSize = Math.max(1, batchSize);
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * Inserts the todos, spread evenly over the shards
+     *
+     * @return number of todos inserted
+     */
+    public long seed(long rows) {
+        var random = new SplittableRandom(randomSeed);
+        String corpus = corpus(random);
+        long started = System.nanoTime();
+        Instant now = Instant.now();
+        for (int shard : shards.all()) {
+            long shardRows = rows / shards.count() + (shard < rows % shards.count() ? 1 : 0);
+            try (var ignored = shards.bind(shard)) {
+                var ids = new IdBlocks(shard);
+                for (long from = 0; from < shardRows; from += batchSize) {
+                    int size = (int) Math.min(batchSize, shardRows - from);
+                    transaction.executeWithoutResult(status -> insertBatch(size, ids, random, corpus, now));
+                }
+            }
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        log.info("Seeded {} todos in {} ms, {} rows/s", rows, elapsedMs, rows * 1000 / elapsedMs);
+        return rows;
+    }
+
+    private void insertBatch(int size, IdBlocks ids, SplittableRandom random, String corpus, Instant now) {
+        var calendar = Calendar.getInstance(UTC);
+        jdbcTemplate.batchUpdate("insert into to_do_entity (id, text, completed_at, completed_hour, version) " +
+                        "values (?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(1, ids.next());
+                        statement.setString(2, text(random, corpus));
+                        if (random.nextDouble() < completedRatio) {
+                            var completedAt = now.minusSeconds(random.nextLong(completedWithinSeconds));
+                            statement.setTimestamp(3, Timestamp.from(completedAt), calendar);
+                            statement.setLong(4, ToDoEntity.hourOf(completedAt.atZone(ZoneOffset.UTC)));
+                        } else {
+                            statement.setNull(3, Types.TIMESTAMP);
+                            statement.setNull(4, Types.BIGINT);
+                        }
+                        statement.setLong(5, ToDoVersionType.next());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return size;
+                    }
+                });
+    }
+
+    private String text(SplittableRandom random, String corpus) {
+        int span = maxTextLength - minTextLength;
+        int length = minTextLength;
+        if (span > 0) {
+            double fraction = random.nextDouble();
+            length += (int) Math.round(span * (textLength == TextLength.SKEWED ? fraction * fraction * fraction : fraction));
+        }
+        int offset = random.nextInt(CORPUS_LENGTH);
+        String text = corpus.substring(offset, offset + length).strip();
+        return text.isEmpty() ? WORDS[0] : text;
+    }
+
+    /**
+     * Words picked at random, the texts are cut out of it at random offsets
+     */
+    private String corpus(SplittableRandom random) {
+        var corpus = new StringBuilder(CORPUS_LENGTH + maxTextLength);
+        while (corpus.length() < CORPUS_LENGTH + maxTextLength) {
+            corpus.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return corpus.toString();
+    }
+
+    /**
+     * Takes ids the way {@link com.example.demo.sharding.ToDoIdGenerator} does, a block per value of the sequence,
+     * so todos saved through Hibernate later on never get one of them
+     */
+    private class IdBlocks {
+
+        private final int shard;
+
+        private long next;
+
+        private long end;
+
+        IdBlocks(int shard) {
+            this.shard = shard;
+        }
+
+        long next() {
+            if (next >= end) {
+                long value = jdbcTemplate.queryForObject("select next value for todo_seq", Long.class);
+                if (shards.isSharded()) {
+                    next = value;
+                    end = value + SEQUENCE_INCREMENT;
+                } else {
+                    //the pooled optimizer of Hibernate hands out the block that ends with the value
+                    next = Math.max(1, value - SEQUENCE_INCREMENT + 1);
+                    end = value + 1;
+                }
+            }
+            long value = next++;
+            return shards.isSharded() ? value * shards.count() + shard : value;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.sharding.ToDoShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Moves todos completed more than {@code todo.archive.after-days} ago from {@code to_do_entity} to
+ * {@code to_do_archive}, every {@code todo.archive.interval-ms}. Each chunk of {@code todo.archive.chunk-size}
+ * todos is moved in a transaction of its own with a pause of {@code todo.archive.chunk-pause-ms} after it,
+ * so a large backlog neither holds locks for long nor competes with the requests for the database.
+ * Enabled with {@code todo.archive.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty("todo.archive.enabled")
+public class ToDoArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(ToDoArchiver.class);
+
+    //the timestamps are stored in UTC, just like hibernate.jdbc.time_zone has Hibernate write them
+    private static final TimeZone UTC = TimeZone.getTimeZone(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaction;
+
+    private final CacheManager cacheManager;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ToDoShards shards;
+
+    //null unless the write-behind mode is enabled
+    private final ToDoWriteBehindBuffer writeBehindBuffer;
+
+    private final Duration age;
+
+    private final int chunkSize;
+
+    private final long chunkPauseMs;
+
+    private final Counter archived;
+
+    private final ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "todo-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ToDoArchiver(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        CacheManager cacheManager,
+                        ApplicationEventPublisher eventPublisher,
+                        ToDoShards shards,
+                        @Nullable ToDoWriteBehindBuffer writeBehindBuffer,
+                        MeterRegistry meterRegistry,
+                        @Value("${todo.archive.after-days:30}") long afterDays,
+                        @Value("${todo.archive.interval-ms:600000}") long intervalMs,
+                        @Value("${todo.archive.chunk-size:500}") int chunkSize,
+                        @Value("${todo.archive.chunk-pause-ms:100}") long chunkPauseMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cacheManager = cacheManager;
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.age = Duration.ofDays(afterDays);
+        //the ids of a chunk go into a single IN list
+        this.chunkSize = Math.max(1, Math.min(chunkSize, ToDoService.MAX_IN_CLAUSE_SIZE));
+        this.chunkPauseMs = chunkPauseMs;
+        this.archived = meterRegistry.counter("todo.archive.archived");
+        archiver.scheduleWithFixedDelay(this::archiveQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Moves every todo that is old enough, one shard after the other and chunk by chunk
+     *
+     * @return number of todos archived
+     */
+    public synchronized int archive() throws InterruptedException {
+        Instant cutoff = Instant.now().minus(age);
+        int total = 0;
+        for (int shard : shards.all()) {
+            try (var ignored = shards.bind(shard)) {
+                List<ToDoResponse> chunk;
+                do {
+                    chunk = transaction.execute(status -> archiveChunk(cutoff));
+                    if (chunk.isEmpty()) {
+                        break;
+                    }
+                    archived(chunk);
+                    total += chunk.size();
+                    Thread.sleep(chunkPauseMs);
+                } while (chunk.size() == chunkSize);
+            }
+        }
+        return total;
+    }
+
+    private List<ToDoResponse> archiveChunk(Instant cutoff) {
+        //locked until the commit, so the todos cannot be cancelled or changed between the copy and the delete
+        List<ToDoResponse> todos = jdbcTemplate.query(
+                "select id, text, completed_at, version from to_do_entity where completed_at < ? " +
+                        "order by completed_at limit ? for update",
+                statement -> {
+                    setTimestamp(statement, 1, cutoff);
+                    statement.setInt(2, chunkSize);
+                },
+                (resultSet, row) -> new ToDoResponse(
+                        resultSet.getLong("id"),
+                        resultSet.getString("text"),
+                        resultSet.getTimestamp("completed_at", Calendar.getInstance(UTC))
+                                .toInstant().atZone(ZoneOffset.UTC),
+                        resultSet.getLong("version")
+                ));
+        if (writeBehindBuffer != null) {
+            //archived once their buffered text is flushed, a text buffered after this check goes to the archive
+            todos = todos.stream().filter(todo -> !writeBehindBuffer.contains(todo.id)).collect(Collectors.toList());
+        }
+        if (todos.isEmpty()) {
+            return todos;
+        }
+        List<Long> ids = todos.stream().map(todo -> todo.id).collect(Collectors.toList());
+        String in = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+        Instant now = Instant.now();
+        jdbcTemplate.update("insert into to_do_archive (id, text, completed_at, version, archived_at) " +
+                "select id, text, completed_at, version, ? from to_do_entity where id in (" + in + ")", statement -> {
+            setTimestamp(statement, 1, now);
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(i + 2, ids.get(i));
+            }
+        });
+        jdbcTemplate.update("delete from to_do_entity where id in (" + in + ")", ids.toArray());
+        return todos;
+    }
+
+    private void archived(List<ToDoResponse> todos) {
+        archived.increment(todos.size());
+        //committed already, so the listeners run right away, and before the evictions as after every change
+        eventPublisher.publishEvent(ToDoChangedEvent.archived(todos));
+        Cache cache = cacheManager.getCache(ToDoService.TODOS_CACHE);
+        if (cache != null) {
+            todos.forEach(todo -> cache.evict(todo.id));
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement statement, int index, Instant instant) throws SQLException {
+        statement.setTimestamp(index, Timestamp.from(instant), Calendar.getInstance(UTC));
+    }
+
+    private void archiveQuietly() {
+        try {
+            int count = archive();
+            if (count > 0) {
+                log.info("Archived {} completed todos", count);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            //the chunks committed so far stay archived, the next run goes on with the rest
+            log.warn("Archiving completed todos failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        archiver.shutdownNow();
+    }
+}
@@ -1,17 +1,62 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoListVersion;
+import com.example.demo.dto.ToDoPageResponse;
 import com.example.demo.dto.ToDoResponse;
 import com.example.demo.dto.ToDoSaveRequest;
 import com.example.demo.dto.mapper.ToDoEntityToResponseMapper;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.exception.ToDoConflictException;
 import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.exception.ToDoPartiallySavedException;
+import com.example.demo.model.ToDoArchivedEntity;
 import com.example.demo.model.ToDoEntity;
+import com.example.demo.model.ToDoVersionType;
+import com.example.demo.replica.ReplicaContext;
+import com.example.demo.repository.ToDoArchiveRepository;
 import com.example.demo.repository.ToDoRepository;
+import com.example.demo.repository.specification.ToDoSpecifications;
+import com.example.demo.search.ToDoSearchIndex;
+import com.example.demo.sharding.ToDoShards;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static com.example.demo.repository.specification.ToDoSpecifications.completedAfter;
+import static com.example.demo.repository.specification.ToDoSpecifications.completedBefore;
+import static com.example.demo.repository.specification.ToDoSpecifications.completedInHoursOf;
+import static com.example.demo.repository.specification.ToDoSpecifications.hasIdIn;
+import static com.example.demo.repository.specification.ToDoSpecifications.isAfter;
 import static com.example.demo.repository.specification.ToDoSpecifications.isCompleted;
 import static com.example.demo.repository.specification.ToDoSpecifications.isInProgress;
 import static org.springframework.data.jpa.domain.Specification.where;
@@ -19,69 +64,687 @@ import static org.springframework.data.jpa.domain.Specification.where;
 @Service
 public class ToDoService {
 
+    public static final String TODOS_CACHE = "todos";
+
+    public static final String TIMER = "todo.service";
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public static final int MAX_IN_CLAUSE_SIZE = 1000;
+
     private final ToDoRepository toDoRepository;
 
-    public ToDoService(ToDoRepository toDoRepository) {
+    private final ToDoArchiveRepository archiveRepository;
+
+    private final ToDoSearchIndex searchIndex;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ToDoShards shards;
+
+    private final CacheManager cacheManager;
+
+    //incremented by every committed change, a todo loaded before a change must not be cached after it
+    private final AtomicLong cacheGeneration = new AtomicLong();
+
+    //null unless the write-behind mode is enabled
+    private final ToDoWriteBehindBuffer writeBehindBuffer;
+
+    public ToDoService(ToDoRepository toDoRepository,
+                       ToDoArchiveRepository archiveRepository,
+                       ToDoSearchIndex searchIndex,
+                       ApplicationEventPublisher eventPublisher,
+                       ToDoShards shards,
+                       CacheManager cacheManager,
+                       @Nullable ToDoWriteBehindBuffer writeBehindBuffer) {
         this.toDoRepository = toDoRepository;
+        this.archiveRepository = archiveRepository;
+        this.searchIndex = searchIndex;
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        this.cacheManager = cacheManager;
+        this.writeBehindBuffer = writeBehindBuffer;
     }
 
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
     public List<ToDoResponse> getAll() {
-        return toDoRepository.findAll().stream()
-                .map(ToDoEntityToResponseMapper::map)
-                .collect(Collectors.toList());
+        return getAllByCriteria(null);
     }
 
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
     public List<ToDoResponse> getAllCompleted() {
-        return getAllByCriteria(where(isCompleted())).stream()
-                .map(ToDoEntityToResponseMapper::map)
+        return getAllByCriteria(where(isCompleted()));
+    }
+
+    /**
+     * Todos completed in {@code [completedAfter, completedBefore)}, either bound may be null
+     */
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoResponse> getAllCompleted(ZonedDateTime completedAfter, ZonedDateTime completedBefore) {
+        return getAllByCriteria(completedBetween(completedAfter, completedBefore));
+    }
+
+    /**
+     * Number of todos completed per hour or day in {@code [completedAfter, completedBefore)},
+     * counted by the database without loading them
+     */
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoCompletionBucket> getCompletionHistogram(ToDoCompletionBucket.Size size,
+                                                             ZonedDateTime completedAfter,
+                                                             ZonedDateTime completedBefore) {
+        //the hour bounds let the database count within the completed hour index alone
+        var specification = completedBetween(completedAfter, completedBefore)
+                .and(completedInHoursOf(completedAfter, completedBefore));
+        List<List<ToDoCompletionBucket>> results = shards.inParallel(shards.all(), true,
+                shard -> toDoRepository.countCompletions(specification, size));
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        //the same bucket from several shards is added up
+        Map<ZonedDateTime, Long> counts = new TreeMap<>();
+        results.forEach(buckets -> buckets.forEach(bucket -> counts.merge(bucket.start, bucket.count, Long::sum)));
+        return counts.entrySet().stream()
+                .map(entry -> new ToDoCompletionBucket(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
     }
 
+    private static Specification<ToDoEntity> completedBetween(ZonedDateTime completedAfter,
+                                                              ZonedDateTime completedBefore) {
+        return where(isCompleted()).and(completedAfter(completedAfter)).and(completedBefore(completedBefore));
+    }
+
+    /**
+     * All todos followed by the archived ones, in id order. With {@code completedOnly} only the completed todos,
+     * with a bound only the todos completed in {@code [completedAfter, completedBefore)}.
+     */
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoResponse> getAllIncludingArchived(boolean completedOnly,
+                                                      ZonedDateTime completedAfter,
+                                                      ZonedDateTime completedBefore) {
+        boolean ranged = completedAfter != null || completedBefore != null;
+        var specification = ranged || completedOnly ? completedBetween(completedAfter, completedBefore) : null;
+        List<List<ToDoResponse>> results = shards.inParallel(shards.all(), true, shard -> {
+            List<ToDoResponse> todos = new ArrayList<>(toDoRepository.findAllResponses(specification));
+            archiveRepository.findAll(
+                    where(ToDoSpecifications.<ToDoArchivedEntity>completedAfter(completedAfter))
+                            .and(completedBefore(completedBefore)),
+                    Sort.by("id")
+            ).forEach(todo -> todos.add(ToDoEntityToResponseMapper.map(todo)));
+            return todos;
+        });
+        //an id is never in both tables: an upsert with the id of an archived todo gets a newly generated one
+        Map<Long, ToDoResponse> byId = new TreeMap<>();
+        results.forEach(todos -> todos.forEach(todo -> byId.putIfAbsent(todo.id, todo)));
+        return overlay(new ArrayList<>(byId.values()));
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
     public List<ToDoResponse> getAllInProgress() {
-        return getAllByCriteria(where(isInProgress())).stream()
-                .map(ToDoEntityToResponseMapper::map)
+        return getAllByCriteria(where(isInProgress()));
+    }
+
+    private List<ToDoResponse> getAllByCriteria(Specification<ToDoEntity> specification) {
+        //projected straight into responses, so no entities are registered in the persistence context
+        return overlay(mergeById(shards.inParallel(shards.all(), true,
+                shard -> toDoRepository.findAllResponses(specification))));
+    }
+
+    /**
+     * The result of a single shard as it is, the results of several shards merged in id order
+     */
+    private static List<ToDoResponse> mergeById(List<List<ToDoResponse>> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(todo -> todo.id))
                 .collect(Collectors.toList());
     }
 
-    private List<ToDoEntity> getAllByCriteria(Specification<ToDoEntity> specification) {
-        return toDoRepository.findAll(specification);
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoResponse> search(String query) {
+        return searchByCriteria(query, null);
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoResponse> searchCompleted(String query) {
+        return searchByCriteria(query, where(isCompleted()));
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public List<ToDoResponse> searchInProgress(String query) {
+        return searchByCriteria(query, where(isInProgress()));
+    }
+
+    private List<ToDoResponse> searchByCriteria(String query, Specification<ToDoEntity> specification) {
+        List<Long> ids = searchIndex.search(query);
+        List<ToDoResponse> result = new ArrayList<>();
+        //ranked ids are fetched in batches, best matches first, until a full page passes the filter
+        for (int i = 0; i < ids.size() && result.size() < MAX_PAGE_SIZE; i += MAX_IN_CLAUSE_SIZE) {
+            List<Long> chunk = ids.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, ids.size()));
+            Map<Long, ToDoResponse> found = findAllResponsesById(specification, chunk)
+                    .stream()
+                    .collect(Collectors.toMap(todo -> todo.id, Function.identity()));
+            for (Long id : chunk) {
+                ToDoResponse todo = found.get(id);
+                if (todo != null && result.size() < MAX_PAGE_SIZE) {
+                    result.add(todo);
+                }
+            }
+        }
+        return overlay(result);
+    }
+
+    private List<ToDoResponse> findAllResponsesById(Specification<ToDoEntity> specification, List<Long> ids) {
+        //every shard is only asked for the ids it owns
+        Map<Integer, List<Long>> idsByShard = ids.stream().collect(Collectors.groupingBy(shards::shardOf));
+        return shards.inParallel(idsByShard.keySet(), true, shard -> toDoRepository.findAllResponses(
+                where(specification).and(hasIdIn(idsByShard.get(shard)))
+        )).stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoListVersion getListVersion() {
+        return withPending(findListVersion(null));
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoListVersion getListVersionCompleted() {
+        return withPending(findListVersion(where(isCompleted())));
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoListVersion getListVersionInProgress() {
+        return withPending(findListVersion(where(isInProgress())));
+    }
+
+    private ToDoListVersion findListVersion(Specification<ToDoEntity> specification) {
+        List<ToDoListVersion> versions = shards.inParallel(shards.all(), true,
+                shard -> toDoRepository.findListVersion(specification));
+        var total = versions.get(0);
+        for (ToDoListVersion version : versions.subList(1, versions.size())) {
+            //versions are drawn for all shards from the same counter, so the highest of them is the highest overall
+            total.count += version.count;
+            total.maxVersion = Math.max(total.maxVersion, version.maxVersion);
+            total.versionSum += version.versionSum;
+        }
+        return total;
+    }
+
+    private ToDoListVersion withPending(ToDoListVersion version) {
+        //every buffered text has a version higher than all before it, so revalidations stop matching on each upsert
+        if (writeBehindBuffer != null) {
+            version.maxVersion = Math.max(version.maxVersion, writeBehindBuffer.maxVersion());
+        }
+        return version;
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoPageResponse getPage(Long after, int limit) {
+        return getPageByCriteria(where(isAfter(after)), limit);
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoPageResponse getPageCompleted(Long after, int limit) {
+        return getPageByCriteria(where(isCompleted()).and(isAfter(after)), limit);
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoPageResponse getPageInProgress(Long after, int limit) {
+        return getPageByCriteria(where(isInProgress()).and(isAfter(after)), limit);
+    }
+
+    private ToDoPageResponse getPageByCriteria(Specification<ToDoEntity> specification, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        //fetch one extra row to find out whether there is a next page without a count query
+        List<ToDoResponse> todos = mergeById(shards.inParallel(shards.all(), true,
+                shard -> toDoRepository.findAllResponsesOrderedById(specification, pageSize + 1)));
+        var page = new ToDoPageResponse();
+        page.items = overlay(todos.size() > pageSize ? todos.subList(0, pageSize) : todos);
+        page.nextCursor = todos.size() > pageSize ? page.items.get(pageSize - 1).id : null;
+        return page;
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<ToDoResponse> consumer) {
+        export(toDoRepository::streamAll, consumer);
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public void exportAllCompleted(Consumer<ToDoResponse> consumer) {
+        export(toDoRepository::streamAllCompleted, consumer);
+    }
+
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public void exportAllInProgress(Consumer<ToDoResponse> consumer) {
+        export(toDoRepository::streamAllInProgress, consumer);
+    }
+
+    private void export(Supplier<Stream<ToDoEntity>> query, Consumer<ToDoResponse> consumer) {
+        //shards one after the other, the consumer is not meant to be called from several threads
+        shards.inTurn(true, shard -> {
+            try (Stream<ToDoEntity> todos = query.get()) {
+                todos.forEach(todo -> {
+                    consumer.accept(overlay(ToDoEntityToResponseMapper.map(todo)));
+                    //keep the persistence context from growing with every streamed row
+                    toDoRepository.detach(todo);
+                });
+            }
+        });
     }
 
+    @Timed(TIMER)
+    //the todo is read and written in one read-write transaction, so it is never read from a replica
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, key = "#result.id")
     public ToDoResponse upsert(ToDoSaveRequest toDoDTO) {
+        try (var ignored = shards.bind(toDoDTO.id == null ? shards.nextShard() : shards.shardOf(toDoDTO.id))) {
+            return upsertOnShard(toDoDTO);
+        }
+    }
+
+    private ToDoResponse upsertOnShard(ToDoSaveRequest toDoDTO) {
+        //a text the column cannot hold is written right away, so the caller gets the error and not the flush
+        if (writeBehindBuffer != null && toDoDTO.id != null && toDoDTO.text.length() <= ToDoEntity.MAX_TEXT_LENGTH) {
+            //updates of existing todos only go to the buffer, the last one per id is written later
+            var current = toDoRepository.findResponseById(toDoDTO.id);
+            if (current.isPresent()) {
+                writeBehindBuffer.put(toDoDTO.id, toDoDTO.text);
+                //readers see the buffered text from now on, so listeners are told now and not on flush
+                ToDoResponse result = writeBehindBuffer.overlay(current.get());
+                eventPublisher.publishEvent(ToDoChangedEvent.updated(List.of(result)));
+                return result;
+            }
+        }
+        if (toDoDTO.id != null) {
+            //one statement that updates or inserts the row, instead of a select followed by an update or insert
+            var upserted = toDoRepository.upsertById(toDoDTO.id, toDoDTO.text);
+            if (upserted.isPresent()) {
+                ToDoResponse result = upserted.get();
+                eventPublisher.publishEvent(result.id.equals(toDoDTO.id)
+                        ? ToDoChangedEvent.updated(List.of(result))
+                        : ToDoChangedEvent.created(List.of(result)));
+                return result;
+            }
+        }
         ToDoEntity todo;
+        boolean created;
         //update if it has id or create if it hasn't
         if (toDoDTO.id == null) {
             todo = new ToDoEntity(toDoDTO.text);
+            created = true;
         } else {
-            todo = toDoRepository.findById(toDoDTO.id).orElse(new ToDoEntity(toDoDTO.id));
+            var existing = toDoRepository.findById(toDoDTO.id);
+            todo = existing.orElse(new ToDoEntity(toDoDTO.id));
             todo.setText(toDoDTO.text);
+            created = existing.isEmpty();
+        }
+        //flushed right away: the new version is set and the shard is still bound when the row is written
+        ToDoResponse result = ToDoEntityToResponseMapper.map(toDoRepository.saveAndFlush(todo));
+        eventPublisher.publishEvent(created
+                ? ToDoChangedEvent.created(List.of(result))
+                : ToDoChangedEvent.updated(List.of(result)));
+        return result;
+    }
+
+    /**
+     * Saves the todos in one transaction, or in one transaction per shard they belong to when sharded
+     *
+     * @throws ToDoPartiallySavedException when saving failed on some shards, with the todos the others saved
+     */
+    @Timed(TIMER)
+    //the shards that saved their todos have committed, listeners must still be told about those
+    @Transactional(noRollbackFor = ToDoPartiallySavedException.class)
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
+    public List<ToDoResponse> upsertAll(List<ToDoSaveRequest> toDoDTOs) {
+        Set<Long> updatedIds = ConcurrentHashMap.newKeySet();
+        List<ToDoResponse> result;
+        RuntimeException failure = null;
+        if (shards.isSharded()) {
+            //new todos of one call all go to the same shard, the others to the shard their id belongs to
+            int newTodosShard = shards.nextShard();
+            Map<Integer, List<Integer>> indexesByShard = IntStream.range(0, toDoDTOs.size()).boxed()
+                    .collect(Collectors.groupingBy(i -> toDoDTOs.get(i).id == null
+                            ? newTodosShard : shards.shardOf(toDoDTOs.get(i).id)));
+            List<Integer> used = new ArrayList<>(indexesByShard.keySet());
+            List<ToDoShards.Outcome<List<ToDoResponse>>> saved = shards.inParallelEach(used, false,
+                    shard -> upsertAllOnShard(
+                            indexesByShard.get(shard).stream().map(toDoDTOs::get).collect(Collectors.toList()),
+                            updatedIds
+                    ));
+            //back into the order of the requests, the todos of failed shards stay null
+            var ordered = new ToDoResponse[toDoDTOs.size()];
+            for (int i = 0; i < used.size(); i++) {
+                if (saved.get(i).isFailed()) {
+                    if (failure == null) {
+                        failure = saved.get(i).getFailure();
+                    } else {
+                        failure.addSuppressed(saved.get(i).getFailure());
+                    }
+                    continue;
+                }
+                List<Integer> indexes = indexesByShard.get(used.get(i));
+                for (int j = 0; j < indexes.size(); j++) {
+                    ordered[indexes.get(j)] = saved.get(i).getResult().get(j);
+                }
+            }
+            result = Arrays.asList(ordered);
+        } else {
+            result = upsertAllOnShard(toDoDTOs, updatedIds);
+        }
+        Map<Boolean, List<ToDoResponse>> updated = result.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.partitioningBy(todo -> updatedIds.contains(todo.id)));
+        if (!updated.get(false).isEmpty()) {
+            eventPublisher.publishEvent(ToDoChangedEvent.created(updated.get(false)));
+        }
+        if (!updated.get(true).isEmpty()) {
+            eventPublisher.publishEvent(ToDoChangedEvent.updated(updated.get(true)));
+        }
+        if (failure != null) {
+            //the eviction of the annotation is skipped when the call throws
+            Cache cache = cacheManager.getCache(TODOS_CACHE);
+            if (cache != null) {
+                cacheGeneration.incrementAndGet();
+                updated.get(true).forEach(todo -> cache.evict(todo.id));
+            }
+            throw new ToDoPartiallySavedException(result, failure);
+        }
+        return result;
+    }
+
+    /**
+     * Saves todos that all belong to the bound shard
+     *
+     * @param updatedIds collects the ids of the todos that already existed
+     */
+    private List<ToDoResponse> upsertAllOnShard(List<ToDoSaveRequest> toDoDTOs, Set<Long> updatedIds) {
+        //load every todo that is going to be updated with a single query instead of findById per item
+        Set<Long> ids = toDoDTOs.stream()
+                .map(toDoDTO -> toDoDTO.id)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (writeBehindBuffer != null) {
+            //written right now, so older buffered texts must not overwrite them later,
+            //removed before anything is locked by this transaction since it waits for a running flush
+            writeBehindBuffer.remove(ids);
+        }
+        Map<Long, ToDoEntity> existing = toDoRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(ToDoEntity::getId, Function.identity()));
+        List<ToDoEntity> todos = toDoDTOs.stream()
+                .map(toDoDTO -> {
+                    ToDoEntity todo = toDoDTO.id == null ? null : existing.get(toDoDTO.id);
+                    //unknown ids get a generated one, just like the merge in upsert does
+                    return todo == null ? new ToDoEntity(toDoDTO.text) : todo.setText(toDoDTO.text);
+                })
+                .collect(Collectors.toList());
+        List<ToDoEntity> saved = toDoRepository.saveAll(todos);
+        //versions of updated todos are only set when the changes are flushed
+        toDoRepository.flush();
+        updatedIds.addAll(existing.keySet());
+        return saved.stream()
+                .map(ToDoEntityToResponseMapper::map)
+                .collect(Collectors.toList());
+    }
+
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, key = "#id")
+    public ToDoResponse completeToDo(Long id) throws ToDoNotFoundException, ToDoConflictException {
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            long version = ToDoVersionType.next();
+            restamp(List.of(id), version);
+            //a single conditional UPDATE: of concurrent completions exactly one matches the row
+            if (toDoRepository.completeById(id, ZonedDateTime.now(ZoneOffset.UTC), version) == 0) {
+                throw transitionFailed(id, "is already completed");
+            }
+            ToDoResponse result = load(id);
+            eventPublisher.publishEvent(ToDoChangedEvent.completed(result));
+            return result;
+        }
+    }
+
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, key = "#id")
+    public ToDoResponse cancelToDo(Long id) throws ToDoNotFoundException, ToDoConflictException {
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            long version = ToDoVersionType.next();
+            restamp(List.of(id), version);
+            if (toDoRepository.cancelById(id, version) == 0) {
+                throw transitionFailed(id, "is not completed");
+            }
+            ToDoResponse result = load(id);
+            eventPublisher.publishEvent(ToDoChangedEvent.cancelled(result));
+            return result;
+        }
+    }
+
+    private ToDoConflictException transitionFailed(Long id, String reason) throws ToDoNotFoundException {
+        //the row did not match either because it is gone or because it is in the wrong state
+        if (!toDoRepository.existsById(id)) {
+            throw new ToDoNotFoundException(id);
+        }
+        return new ToDoConflictException(id, reason);
+    }
+
+    /**
+     * Completes the todos with the given ids that are still in progress
+     *
+     * @return number of todos that were completed
+     */
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
+    public int completeAll(List<Long> ids) {
+        var completedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        long version = ToDoVersionType.next();
+        restamp(ids, version);
+        return bulkUpdated(updateByShard(ids, chunk -> toDoRepository.completeAllById(chunk, completedAt, version)));
+    }
+
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
+    public int completeAllInProgress() {
+        var completedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        long version = ToDoVersionType.next();
+        restamp(null, version);
+        return bulkUpdated(onAllShards(() -> toDoRepository.completeAllInProgress(completedAt, version)));
+    }
+
+    /**
+     * Cancels the todos with the given ids that are completed
+     *
+     * @return number of todos that were cancelled
+     */
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
+    public int cancelAll(List<Long> ids) {
+        long version = ToDoVersionType.next();
+        restamp(ids, version);
+        return bulkUpdated(updateByShard(ids, chunk -> toDoRepository.cancelAllById(chunk, version)));
+    }
+
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
+    public int cancelAllCompleted() {
+        long version = ToDoVersionType.next();
+        restamp(null, version);
+        return bulkUpdated(onAllShards(() -> toDoRepository.cancelAllCompleted(version)));
+    }
+
+    /**
+     * Gives buffered texts the version a completion or cancellation is about to write, all of them without ids.
+     * Before the rows are locked, as a running flush may still have to update them.
+     */
+    private void restamp(List<Long> ids, long version) {
+        if (writeBehindBuffer == null) {
+            return;
+        }
+        if (ids == null) {
+            writeBehindBuffer.restampAll(version);
+        } else {
+            writeBehindBuffer.restamp(ids, version);
         }
-        return ToDoEntityToResponseMapper.map(toDoRepository.save(todo));
     }
 
-    public ToDoResponse completeToDo(Long id) throws ToDoNotFoundException {
-        ToDoEntity todo = toDoRepository.findById(id).orElseThrow(() -> new ToDoNotFoundException(id));
-        todo.completeNow();
-        return ToDoEntityToResponseMapper.map(toDoRepository.save(todo));
+    private int bulkUpdated(int affected) {
+        if (affected > 0) {
+            eventPublisher.publishEvent(ToDoChangedEvent.bulkUpdated());
+        }
+        return affected;
     }
 
-    public ToDoResponse cancelToDo(Long id) throws ToDoNotFoundException {
-        ToDoEntity todo = toDoRepository.findById(id).orElseThrow(() -> new ToDoNotFoundException(id));
-        todo.cancelNow();
-        return ToDoEntityToResponseMapper.map(toDoRepository.save(todo));
+    private int updateByShard(List<Long> ids, ToIntFunction<List<Long>> update) {
+        Map<Integer, List<Long>> idsByShard = ids.stream().collect(Collectors.groupingBy(shards::shardOf));
+        return shards.inParallel(idsByShard.keySet(), false,
+                shard -> updateInChunks(idsByShard.get(shard), update)
+        ).stream().mapToInt(Integer::intValue).sum();
     }
 
+    private int onAllShards(IntSupplier update) {
+        return shards.inParallel(shards.all(), false, shard -> update.getAsInt())
+                .stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private int updateInChunks(List<Long> ids, ToIntFunction<List<Long>> update) {
+        //keep IN lists within the bind parameter limits of the usual databases
+        int affected = 0;
+        for (int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+            affected += update.applyAsInt(ids.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, ids.size())));
+        }
+        return affected;
+    }
+
+    /**
+     * The todo from the cache, or loaded and cached unless a change was committed while it was loaded.
+     * Writers only evict, after they committed, so the cache never holds anything older than the database.
+     */
+    @Timed(TIMER)
     public ToDoResponse getOne(Long id) throws ToDoNotFoundException {
-        return ToDoEntityToResponseMapper.map(
-                toDoRepository.findById(id).orElseThrow(() -> new ToDoNotFoundException(id))
-        );
+        Cache cache = cacheManager.getCache(TODOS_CACHE);
+        ToDoResponse cached = cache == null ? null : cache.get(id, ToDoResponse.class);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cacheGeneration.get();
+        ToDoResponse todo = load(id);
+        if (cache != null && generation == cacheGeneration.get()) {
+            cache.put(id, todo);
+            //a change committed between the check and the put may have been evicted before the put
+            if (generation != cacheGeneration.get()) {
+                cache.evict(id);
+            }
+        }
+        return todo;
     }
 
+    private ToDoResponse load(Long id) throws ToDoNotFoundException {
+        //cached for minutes, so it must not come from a replica that is still behind
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            return ReplicaContext.onPrimary(() -> overlay(
+                    toDoRepository.findResponseById(id).orElseThrow(() -> new ToDoNotFoundException(id))
+            ));
+        }
+    }
+
+    /**
+     * Runs after the commit of every change and before the cache evictions of the writer
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChanged(ToDoChangedEvent event) {
+        cacheGeneration.incrementAndGet();
+    }
+
+    /**
+     * The todo, or the archived one when it has been archived
+     */
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public ToDoResponse getOneIncludingArchived(Long id) throws ToDoNotFoundException {
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            var todo = toDoRepository.findResponseById(id);
+            if (todo.isPresent()) {
+                return overlay(todo.get());
+            }
+            return archiveRepository.findResponseById(id).orElseThrow(() -> new ToDoNotFoundException(id));
+        }
+    }
+
+    /**
+     * Looks up only the version of the todo, which is enough to answer a conditional request
+     */
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public long getVersion(Long id) throws ToDoNotFoundException {
+        long version;
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            version = toDoRepository.findVersionById(id).orElseThrow(() -> new ToDoNotFoundException(id));
+        }
+        //the row is ahead of the buffered text when it was completed or cancelled since
+        return writeBehindBuffer == null ? version : Math.max(version, writeBehindBuffer.versionOf(id).orElse(version));
+    }
+
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, key = "#id")
     public void deleteOne(Long id) {
-        toDoRepository.deleteById(id);
+        if (writeBehindBuffer != null) {
+            //before the row is locked by the delete, a running flush may still have to update it
+            writeBehindBuffer.remove(List.of(id));
+        }
+        //deleteById would load the entity first and fail when it is already gone
+        try (var ignored = shards.bind(shards.shardOf(id))) {
+            toDoRepository.deleteOneById(id);
+            archiveRepository.deleteOneById(id);
+        }
+        eventPublisher.publishEvent(ToDoChangedEvent.deleted(id));
     }
 
+    @Timed(TIMER)
+    @Transactional
+    @CacheEvict(cacheNames = TODOS_CACHE, allEntries = true)
     public void deleteAll() {
-        toDoRepository.deleteAll();
+        if (writeBehindBuffer != null) {
+            //before the rows are locked by the delete, a running flush may still have to update them
+            writeBehindBuffer.clear();
+        }
+        //a single DELETE statement instead of loading every todo and deleting them one by one
+        shards.inParallel(shards.all(), false, shard -> {
+            toDoRepository.deleteAllInBatch();
+            archiveRepository.deleteAllInBatch();
+            return null;
+        });
+        eventPublisher.publishEvent(ToDoChangedEvent.allDeleted());
+    }
+
+    private ToDoResponse overlay(ToDoResponse todo) {
+        return writeBehindBuffer == null ? todo : writeBehindBuffer.overlay(todo);
+    }
+
+    private List<ToDoResponse> overlay(List<ToDoResponse> todos) {
+        return writeBehindBuffer == null ? todos : writeBehindBuffer.overlay(todos);
     }
 }
@@ -0,0 +1,296 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoVersionType;
+import com.example.demo.sharding.ToDoShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps only the last text upserted for a todo and writes the buffered texts in JDBC batches,
+ * every {@code todo.write-behind.flush-interval-ms} or as soon as {@code todo.write-behind.max-entries} are waiting.
+ * Enabled with {@code todo.write-behind.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty("todo.write-behind.enabled")
+public class ToDoWriteBehindBuffer {
+
+    //a version written since the text was buffered is never taken back
+    private static final String UPDATE = "update to_do_entity set text = ?, version = greatest(version, ?) where id = ?";
+
+    private static final String UPDATE_ARCHIVED =
+            "update to_do_archive set text = ?, version = greatest(version, ?) where id = ?";
+
+    private static final Logger log = LoggerFactory.getLogger(ToDoWriteBehindBuffer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final CacheManager cacheManager;
+
+    private final ToDoShards shards;
+
+    private final int maxEntries;
+
+    private final Counter buffered;
+
+    private final Counter flushed;
+
+    private final Counter dropped;
+
+    //id -> text waiting for the next flush
+    private final Map<Long, Buffered> pending = new ConcurrentHashMap<>();
+
+    //id -> text being written by the running flush, still visible to reads until it is committed
+    private final Map<Long, Buffered> flushing = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "todo-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ToDoWriteBehindBuffer(JdbcTemplate jdbcTemplate,
+                                 CacheManager cacheManager,
+                                 ToDoShards shards,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${todo.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                 @Value("${todo.write-behind.max-entries:1000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheManager = cacheManager;
+        this.shards = shards;
+        this.maxEntries = maxEntries;
+        this.buffered = meterRegistry.counter("todo.write-behind.buffered");
+        this.flushed = meterRegistry.counter("todo.write-behind.flushed");
+        this.dropped = meterRegistry.counter("todo.write-behind.dropped");
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the text with a version of its own, so every upsert changes the ETag of the todo and its lists
+     *
+     * @return the version the todo has from now on
+     */
+    public long put(Long id, String text) {
+        long version = ToDoVersionType.next();
+        pending.put(id, new Buffered(text, version));
+        buffered.increment();
+        if (pending.size() >= maxEntries && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+        return version;
+    }
+
+    /**
+     * Drops the buffered text, for todos that are about to be deleted or written directly.
+     * Waits for a running flush, so it cannot write an older text after them.
+     */
+    public synchronized void remove(Collection<Long> ids) {
+        ids.forEach(pending::remove);
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Gives the buffered texts the version a direct write of the todos is about to set, so the todo keeps one
+     * version for the buffered text together with the written state.
+     * Called before the write locks the rows, as it waits for a running flush just like {@link #remove}.
+     */
+    public synchronized void restamp(Collection<Long> ids, long version) {
+        ids.forEach(id -> {
+            pending.computeIfPresent(id, (key, text) -> text.restamped(version));
+            flushing.computeIfPresent(id, (key, text) -> text.restamped(version));
+        });
+    }
+
+    /**
+     * {@link #restamp} for every buffered text, for writes to a set of todos that is not known up front
+     */
+    public synchronized void restampAll(long version) {
+        pending.replaceAll((id, text) -> text.restamped(version));
+        flushing.replaceAll((id, text) -> text.restamped(version));
+    }
+
+    public boolean contains(Long id) {
+        return pending.containsKey(id) || flushing.containsKey(id);
+    }
+
+    /**
+     * The version the todo will have once its buffered text is flushed, empty when nothing is buffered for it
+     */
+    public OptionalLong versionOf(Long id) {
+        Buffered text = buffered(id);
+        return text == null ? OptionalLong.empty() : OptionalLong.of(text.version);
+    }
+
+    /**
+     * The todo as it will be once its buffered text is flushed
+     */
+    public ToDoResponse overlay(ToDoResponse todo) {
+        Buffered text = buffered(todo.id);
+        if (text == null) {
+            return todo;
+        }
+        //the row may have been written directly since, then its version is the higher one
+        return new ToDoResponse(todo.id, text.text, todo.completedAt, Math.max(todo.version, text.version));
+    }
+
+    public List<ToDoResponse> overlay(List<ToDoResponse> todos) {
+        if (pending.isEmpty() && flushing.isEmpty()) {
+            return todos;
+        }
+        return todos.stream().map(this::overlay).collect(Collectors.toList());
+    }
+
+    /**
+     * Highest version of the buffered todos, 0 when nothing is buffered
+     */
+    public long maxVersion() {
+        return Stream.concat(pending.values().stream(), flushing.values().stream())
+                .mapToLong(text -> text.version)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * Writes everything buffered so far with one JDBC batch per {@link ToDoService#MAX_IN_CLAUSE_SIZE} todos.
+     * The text of a todo that was archived after it was buffered goes to the archived copy.
+     * Texts the database refuses are dropped, everything else that could not be written is tried again next time.
+     *
+     * @return number of todos written
+     */
+    public synchronized int flush() {
+        flushRequested.set(false);
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            Buffered text = pending.remove(id);
+            if (text != null) {
+                flushing.put(id, text);
+            }
+        }
+        if (flushing.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, List<Long>> idsByShard = flushing.keySet().stream()
+                .collect(Collectors.groupingBy(shards::shardOf));
+        int written = 0;
+        for (Map.Entry<Integer, List<Long>> shardIds : idsByShard.entrySet()) {
+            try (var ignored = shards.bind(shardIds.getKey())) {
+                List<Long> ids = shardIds.getValue();
+                for (int i = 0; i < ids.size(); i += ToDoService.MAX_IN_CLAUSE_SIZE) {
+                    written += write(ids.subList(i, Math.min(i + ToDoService.MAX_IN_CLAUSE_SIZE, ids.size())));
+                }
+            }
+        }
+        return written;
+    }
+
+    private int write(List<Long> ids) {
+        int written;
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE,
+                    ids.stream().map(this::updateArguments).collect(Collectors.toList()));
+            List<Object[]> archived = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (updated[i] == 0) {
+                    archived.add(updateArguments(ids.get(i)));
+                }
+            }
+            if (!archived.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_ARCHIVED, archived);
+            }
+            written = ids.size();
+        } catch (DataIntegrityViolationException e) {
+            //a single refused text fails the whole batch, so the texts are written one by one to find it
+            written = 0;
+            for (Long id : ids) {
+                try {
+                    if (jdbcTemplate.update(UPDATE, updateArguments(id)) == 0) {
+                        jdbcTemplate.update(UPDATE_ARCHIVED, updateArguments(id));
+                    }
+                    written++;
+                } catch (DataIntegrityViolationException refused) {
+                    log.warn("Dropping the buffered text of todo {}, the database refused it", id, refused);
+                    dropped.increment();
+                }
+            }
+        }
+        flushed.increment(written);
+        //listeners were told when the texts were buffered, reads return the same todos before and after
+        Cache cache = cacheManager.getCache(ToDoService.TODOS_CACHE);
+        ids.forEach(id -> {
+            flushing.remove(id);
+            if (cache != null) {
+                cache.evict(id);
+            }
+        });
+        return written;
+    }
+
+    private Object[] updateArguments(Long id) {
+        Buffered text = flushing.get(id);
+        return new Object[]{text.text, text.version, id};
+    }
+
+    private Buffered buffered(Long id) {
+        Buffered text = pending.get(id);
+        return text != null ? text : flushing.get(id);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            //the texts not written yet stay in the flushing map and are written again by the next flush
+            log.warn("Flushing buffered todos failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    private static class Buffered {
+
+        private final String text;
+
+        private final long version;
+
+        private Buffered(String text, long version) {
+            this.text = text;
+            this.version = version;
+        }
+
+        private Buffered restamped(long version) {
+            return new Buffered(text, Math.max(this.version, version));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.demo.sharding;
+
+/**
+ * Shard the current thread works on, read by {@link ShardRoutingDataSource} and {@link ToDoIdGenerator}.
+ * Nothing is bound unless there is more than one shard.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Shard> CURRENT = new ThreadLocal<>();
+
+    public static class Shard {
+
+        private final int index;
+
+        private final int count;
+
+        Shard(int index, int count) {
+            this.index = index;
+            this.count = count;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return the bound shard or null
+     */
+    public static Shard current() {
+        return CURRENT.get();
+    }
+
+    static void set(Shard shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.sharding;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Hibernate only creates the schema through the connection it gets, which is one of the first shard.
+ * This creates the same schema in the other shards whenever Hibernate is set to create it.
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    private static final Set<String> CREATING_ACTIONS = Set.of("create", "create-drop", "create-only");
+
+    private final int count;
+
+    public ShardSchemaIntegrator(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void integrate(Metadata metadata,
+                          SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        Object action = serviceRegistry.getService(ConfigurationService.class)
+                .getSettings()
+                .get(AvailableSettings.HBM2DDL_AUTO);
+        if (action == null || !CREATING_ACTIONS.contains(action.toString())) {
+            return;
+        }
+        ShardContext.Shard previous = ShardContext.current();
+        try {
+            for (int shard = 1; shard < count; shard++) {
+                ShardContext.set(new ShardContext.Shard(shard, count));
+                new SchemaExport().create(EnumSet.of(TargetType.DATABASE), metadata);
+            }
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.sharding;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The usual pooled sequence generator while there is a single shard.
+ * With more shards every shard allocates from its own sequence and the value is spread to
+ * {@code value * count + shard}, so ids never collide and the owning shard is {@code id % count}.
+ */
+public class ToDoIdGenerator extends SequenceStyleGenerator {
+
+    //shard -> {next value, end of the allocated block}
+    private final Map<Integer, long[]> blocks = new HashMap<>();
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        ShardContext.Shard shard = ShardContext.current();
+        if (shard == null) {
+            return super.generate(session, object);
+        }
+        long value;
+        synchronized (blocks) {
+            long[] block = blocks.computeIfAbsent(shard.getIndex(), index -> new long[2]);
+            if (block[0] >= block[1]) {
+                //the session is already connected to the shard, so this reads the sequence of the shard
+                block[0] = getDatabaseStructure().buildCallback(session).getNextValue().makeValue().longValue();
+                block[1] = block[0] + getDatabaseStructure().getIncrementSize();
+            }
+            value = block[0]++;
+        }
+        return value * shard.getCount() + shard.getIndex();
+    }
+}
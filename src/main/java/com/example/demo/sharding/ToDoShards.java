@@ -0,0 +1,217 @@
+package com.example.demo.sharding;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads todos over the datasources listed in {@code todo.sharding.urls} by id, see {@link ToDoIdGenerator}.
+ * Without that property there is one shard and every method simply runs the work on the calling thread
+ * in the current transaction.
+ */
+@Component
+public class ToDoShards {
+
+    /**
+     * Keeps the shard bound until it is closed
+     */
+    public interface Binding extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * What the work of one shard returned, or how it failed
+     */
+    public static class Outcome<T> {
+
+        private final T result;
+
+        private final RuntimeException failure;
+
+        private Outcome(T result, RuntimeException failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        public T getResult() {
+            return result;
+        }
+
+        public RuntimeException getFailure() {
+            return failure;
+        }
+    }
+
+    private static final Binding UNBOUND = () -> {
+    };
+
+    private final int count;
+
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    //fan-out of reads and bulk writes, only created with more than one shard
+    private final ExecutorService executor;
+
+    public ToDoShards(@Value("${todo.sharding.urls:}") List<String> urls,
+                      ObjectProvider<PlatformTransactionManager> transactionManager) {
+        this.count = Math.max(1, urls.size());
+        this.transactionManager = transactionManager;
+        if (count > 1) {
+            var threads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(count * 4, runnable -> {
+                var thread = new Thread(runnable, "todo-shards-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public List<Integer> all() {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    public int shardOf(Long id) {
+        return (int) Math.floorMod(id, (long) count);
+    }
+
+    /**
+     * Shard for a new todo, taken in turns
+     */
+    public int nextShard() {
+        return Math.floorMod(nextShard.getAndIncrement(), count);
+    }
+
+    /**
+     * Binds the shard to the calling thread. A transaction that is already running must not have used
+     * its connection yet, later statements of it go to this shard.
+     */
+    public Binding bind(int shard) {
+        if (!isSharded()) {
+            return UNBOUND;
+        }
+        ShardContext.Shard previous = ShardContext.current();
+        ShardContext.set(new ShardContext.Shard(shard, count));
+        return () -> ShardContext.set(previous);
+    }
+
+    /**
+     * Runs the work for every given shard in parallel, each in a transaction of its own.
+     *
+     * @return results in the order of the shards
+     */
+    public <T> List<T> inParallel(Collection<Integer> shards, boolean readOnly, IntFunction<T> work) {
+        if (!isSharded()) {
+            return shards.stream().map(work::apply).collect(Collectors.toList());
+        }
+        TransactionTemplate transaction = transaction(readOnly, TransactionDefinition.PROPAGATION_REQUIRED);
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (var ignored = bind(shard)) {
+                    return transaction.execute(status -> work.apply(shard));
+                }
+            }, executor));
+        }
+        try {
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the work for every given shard in parallel, each in a transaction of its own, like
+     * {@link #inParallel}, but waits for all of them and reports every failure instead of throwing the first one:
+     * the shards that succeeded have committed regardless. Without sharding the work runs in the current
+     * transaction and a failure is thrown, as nothing of it was committed.
+     *
+     * @return outcomes in the order of the shards
+     */
+    public <T> List<Outcome<T>> inParallelEach(Collection<Integer> shards, boolean readOnly, IntFunction<T> work) {
+        if (!isSharded()) {
+            return shards.stream().map(shard -> new Outcome<>(work.apply(shard), null)).collect(Collectors.toList());
+        }
+        TransactionTemplate transaction = transaction(readOnly, TransactionDefinition.PROPAGATION_REQUIRED);
+        List<CompletableFuture<Outcome<T>>> futures = new ArrayList<>();
+        for (int shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (var ignored = bind(shard)) {
+                    return new Outcome<>(transaction.execute(status -> work.apply(shard)), null);
+                } catch (RuntimeException e) {
+                    return new Outcome<>(null, e);
+                }
+            }, executor));
+        }
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    /**
+     * Runs the work for one shard after the other on the calling thread, each in a transaction of its own,
+     * for work that cannot leave the thread like writing to a response
+     */
+    public void inTurn(boolean readOnly, IntConsumer work) {
+        if (!isSharded()) {
+            work.accept(0);
+            return;
+        }
+        TransactionTemplate transaction = transaction(readOnly, TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (int shard = 0; shard < count; shard++) {
+            int current = shard;
+            try (var ignored = bind(current)) {
+                transaction.executeWithoutResult(status -> work.accept(current));
+            }
+        }
+    }
+
+    private TransactionTemplate transaction(boolean readOnly, int propagation) {
+        var transaction = new TransactionTemplate(transactionManager.getObject());
+        transaction.setReadOnly(readOnly);
+        transaction.setPropagationBehavior(propagation);
+        return transaction;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
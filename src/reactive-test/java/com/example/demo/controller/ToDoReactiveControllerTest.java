@@ -0,0 +1,155 @@
+package com.example.demo.controller;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+@ActiveProfiles(profiles = {"test", "reactive"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ToDoReactiveControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    ToDoRepository toDoRepository;
+
+    @BeforeEach
+    void setUp() {
+        toDoRepository.deleteAll();
+    }
+
+    @Test
+    void whenGetAllInProgress_thenStreamOnlyInProgress() {
+
+        // given
+        toDoRepository.save(new ToDoEntity(1L, "My to do text for completed", ZonedDateTime.now(ZoneOffset.UTC)));
+        toDoRepository.save(new ToDoEntity(2L, "My to do text for in progress"));
+
+        // when
+        // then
+        this.webTestClient
+                .get().uri("/todos?isCompleted=false")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].text").isEqualTo("My to do text for in progress")
+                .jsonPath("$[0].completedAt").doesNotExist();
+    }
+
+    @Test
+    void whenSaveCompleteAndDelete_thenBehaveLikeServletApi() {
+
+        // given
+        ToDoResponse saved = this.webTestClient
+                .post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"text\":\"My to do text\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ToDoResponse.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(saved).isNotNull();
+        assertThat(saved.text).isEqualTo("My to do text");
+
+        // when
+        // then
+        this.webTestClient
+                .put().uri("/todos/" + saved.id + "/complete")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.completedAt").exists();
+        this.webTestClient
+                .put().uri("/todos/" + saved.id + "/complete")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+        assertThat(toDoRepository.findById(saved.id).orElseThrow().getCompletedAt()).isNotNull();
+
+        this.webTestClient
+                .post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"id\":" + saved.id + ",\"text\":\"Changed text\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(saved.id.intValue())
+                .jsonPath("$.text").isEqualTo("Changed text");
+
+        this.webTestClient
+                .delete().uri("/todos/" + saved.id)
+                .exchange()
+                .expectStatus().isNoContent();
+        this.webTestClient
+                .get().uri("/todos/" + saved.id)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void whenWrittenReactively_thenVersionsComeFromTheSharedCounter() {
+
+        // given
+        long servletVersion = toDoRepository.save(new ToDoEntity("Written by the servlet stack")).getVersion();
+
+        // when
+        Long id = exchange(this.webTestClient.post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"text\":\"My to do text\"}")).id;
+        long created = version(id);
+        exchange(this.webTestClient.put().uri("/todos/" + id + "/complete"));
+        long completed = version(id);
+        exchange(this.webTestClient.put().uri("/todos/" + id + "/cancel"));
+        long cancelled = version(id);
+        exchange(this.webTestClient.post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"id\":" + id + ",\"text\":\"Changed text\"}"));
+        long updated = version(id);
+
+        // then
+        assertThat(created).isGreaterThan(servletVersion);
+        assertThat(completed).isGreaterThan(created);
+        assertThat(cancelled).isGreaterThan(completed);
+        assertThat(updated).isGreaterThan(cancelled);
+    }
+
+    @Test
+    void whenSaveWithoutText_thenReturnBadRequest() {
+        this.webTestClient
+                .post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private long version(Long id) {
+        return toDoRepository.findById(id).orElseThrow().getVersion();
+    }
+
+    private static ToDoResponse exchange(WebTestClient.RequestHeadersSpec<?> request) {
+        return request.exchange()
+                .expectStatus().isOk()
+                .expectBody(ToDoResponse.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
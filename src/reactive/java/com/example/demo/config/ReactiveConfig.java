@@ -0,0 +1,76 @@
+package com.example.demo.config;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * R2DBC access for the reactive variant of the API, against the same database JPA creates the schema in
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig extends AbstractR2dbcConfiguration {
+
+    private final String url;
+
+    private final String username;
+
+    private final String password;
+
+    public ReactiveConfig(@Value("${todo.r2dbc.url}") String url,
+                          @Value("${spring.datasource.username:sa}") String username,
+                          @Value("${spring.datasource.password:}") String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    @Bean
+    public ConnectionFactory connectionFactory() {
+        //same credentials as the JDBC data source
+        return ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+    }
+
+    /**
+     * Tomcat is on the classpath for the servlet stack and would be picked first otherwise
+     */
+    @Bean
+    public NettyReactiveWebServerFactory reactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Override
+    protected List<Object> getCustomConverters() {
+        return List.of(UtcTimestampToZonedDateTimeConverter.INSTANCE);
+    }
+
+    /**
+     * Hibernate writes timestamps in UTC (hibernate.jdbc.time_zone), R2DBC reads them back without a zone
+     */
+    @ReadingConverter
+    enum UtcTimestampToZonedDateTimeConverter implements Converter<LocalDateTime, ZonedDateTime> {
+        INSTANCE;
+
+        @Override
+        public ZonedDateTime convert(LocalDateTime source) {
+            return source.atZone(ZoneOffset.UTC);
+        }
+    }
+}
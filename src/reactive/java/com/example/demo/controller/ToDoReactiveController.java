@@ -0,0 +1,81 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoConflictException;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.service.ToDoReactiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+
+/**
+ * WebFlux variant of {@link ToDoController}, enabled with the {@code reactive} profile.
+ * Lists are written as the rows arrive, at the pace the client reads them.
+ */
+@RestController
+@Profile("reactive")
+public class ToDoReactiveController {
+
+    @Autowired
+    ToDoReactiveService toDoService;
+
+    @ExceptionHandler({ToDoNotFoundException.class})
+    public ResponseEntity<Object> handleException(Exception ex) {
+        return ResponseEntity.notFound().build();
+    }
+
+    @ExceptionHandler({ToDoConflictException.class})
+    public ResponseEntity<Object> handleConflict(Exception ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @GetMapping("/todos")
+    public Flux<ToDoResponse> getAll(@RequestParam(required = false) Boolean isCompleted) {
+        if (isCompleted != null) {
+            if (isCompleted) {
+                return toDoService.getAllCompleted();
+            }
+            return toDoService.getAllInProgress();
+        }
+        return toDoService.getAll();
+    }
+
+    @PostMapping("/todos")
+    public Mono<ToDoResponse> save(@Valid @RequestBody Mono<ToDoSaveRequest> todoSaveRequest) {
+        return todoSaveRequest.flatMap(toDoService::upsert);
+    }
+
+    @PutMapping("/todos/{id}/complete")
+    public Mono<ToDoResponse> complete(@PathVariable Long id) {
+        return toDoService.completeToDo(id);
+    }
+
+    @PutMapping("/todos/{id}/cancel")
+    public Mono<ToDoResponse> cancel(@PathVariable Long id) {
+        return toDoService.cancelToDo(id);
+    }
+
+    @GetMapping("/todos/{id}")
+    public Mono<ToDoResponse> getOne(@PathVariable Long id) {
+        return toDoService.getOne(id);
+    }
+
+    @DeleteMapping("/todos/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> delete(@PathVariable Long id) {
+        return toDoService.deleteOne(id);
+    }
+
+    @DeleteMapping("/todos")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteAll() {
+        return toDoService.deleteAll();
+    }
+}
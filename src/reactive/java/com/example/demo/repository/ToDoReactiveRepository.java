@@ -0,0 +1,125 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.model.ToDoVersionType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Non-blocking counterpart of {@link ToDoRepository}, reading straight into responses like its projections do.
+ * Versions are drawn from {@link ToDoVersionType#next()} like the servlet stack does, as both write the same table.
+ */
+@Repository
+@Profile("reactive")
+public class ToDoReactiveRepository {
+
+    private static final String SELECT_RESPONSES = "select id, text, completed_at, version from to_do_entity";
+
+    private final DatabaseClient databaseClient;
+
+    public ToDoReactiveRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Flux<ToDoResponse> findAllResponses() {
+        return findResponses(SELECT_RESPONSES + " order by id");
+    }
+
+    public Flux<ToDoResponse> findAllCompletedResponses() {
+        return findResponses(SELECT_RESPONSES + " where completed_at is not null order by id");
+    }
+
+    public Flux<ToDoResponse> findAllInProgressResponses() {
+        return findResponses(SELECT_RESPONSES + " where completed_at is null order by id");
+    }
+
+    public Mono<ToDoResponse> findResponseById(Long id) {
+        return databaseClient.execute(SELECT_RESPONSES + " where id = :id")
+                .bind("id", id)
+                .as(ToDoResponse.class)
+                .fetch()
+                .one();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return databaseClient.execute("select count(*) from to_do_entity where id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> row.get(0, Long.class) > 0)
+                .one();
+    }
+
+    /**
+     * Takes an id from the sequence JPA uses. Hibernate only hands out ids below the values it gets
+     * from the sequence itself, so a value taken here never collides with them.
+     */
+    public Mono<Long> nextId() {
+        return databaseClient.execute("select next value for todo_seq")
+                .map((row, metadata) -> row.get(0, Long.class))
+                .one();
+    }
+
+    public Mono<Integer> insert(Long id, String text) {
+        return databaseClient.execute("insert into to_do_entity (id, text, version) values (:id, :text, :version)")
+                .bind("id", id)
+                .bind("text", text)
+                .bind("version", ToDoVersionType.next())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> updateText(Long id, String text) {
+        return databaseClient.execute("update to_do_entity set text = :text, version = :version where id = :id")
+                .bind("id", id)
+                .bind("text", text)
+                .bind("version", ToDoVersionType.next())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> completeById(Long id, LocalDateTime completedAt) {
+        return databaseClient.execute("update to_do_entity set completed_at = :completedAt, " +
+                "completed_hour = :completedHour, version = :version where id = :id and completed_at is null")
+                .bind("id", id)
+                .bind("completedAt", completedAt)
+                .bind("completedHour", ToDoEntity.hourOf(completedAt.atZone(ZoneOffset.UTC)))
+                .bind("version", ToDoVersionType.next())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> cancelById(Long id) {
+        return databaseClient.execute("update to_do_entity set completed_at = null, completed_hour = null, " +
+                "version = :version where id = :id and completed_at is not null")
+                .bind("id", id)
+                .bind("version", ToDoVersionType.next())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> deleteById(Long id) {
+        return databaseClient.execute("delete from to_do_entity where id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> deleteAll() {
+        return databaseClient.execute("delete from to_do_entity")
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Flux<ToDoResponse> findResponses(String sql) {
+        return databaseClient.execute(sql)
+                .as(ToDoResponse.class)
+                .fetch()
+                .all();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.exception.ToDoConflictException;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.repository.ToDoReactiveRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link ToDoService} with the same semantics
+ */
+@Service
+@Profile("reactive")
+public class ToDoReactiveService {
+
+    private final ToDoReactiveRepository toDoRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ToDoReactiveService(ToDoReactiveRepository toDoRepository, ApplicationEventPublisher eventPublisher) {
+        this.toDoRepository = toDoRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public Flux<ToDoResponse> getAll() {
+        return toDoRepository.findAllResponses();
+    }
+
+    public Flux<ToDoResponse> getAllCompleted() {
+        return toDoRepository.findAllCompletedResponses();
+    }
+
+    public Flux<ToDoResponse> getAllInProgress() {
+        return toDoRepository.findAllInProgressResponses();
+    }
+
+    public Mono<ToDoResponse> getOne(Long id) {
+        return toDoRepository.findResponseById(id)
+                .switchIfEmpty(Mono.error(() -> new ToDoNotFoundException(id)));
+    }
+
+    public Mono<ToDoResponse> upsert(ToDoSaveRequest toDoDTO) {
+        //update if it has id or create if it hasn't, unknown ids get a generated one
+        if (toDoDTO.id == null) {
+            return create(toDoDTO.text);
+        }
+        return toDoRepository.updateText(toDoDTO.id, toDoDTO.text)
+                .flatMap(updated -> updated == 0
+                        ? create(toDoDTO.text)
+                        : getOne(toDoDTO.id)
+                        .doOnNext(todo -> eventPublisher.publishEvent(ToDoChangedEvent.updated(List.of(todo)))));
+    }
+
+    private Mono<ToDoResponse> create(String text) {
+        return toDoRepository.nextId()
+                .flatMap(id -> toDoRepository.insert(id, text).thenReturn(id))
+                .flatMap(this::getOne)
+                .doOnNext(todo -> eventPublisher.publishEvent(ToDoChangedEvent.created(List.of(todo))));
+    }
+
+    public Mono<ToDoResponse> completeToDo(Long id) {
+        //the same conditional UPDATE as the servlet variant, exactly one concurrent completion matches
+        return toDoRepository.completeById(id, LocalDateTime.now(ZoneOffset.UTC))
+                .flatMap(updated -> updated == 0 ? transitionFailed(id, "is already completed") : getOne(id))
+                .doOnNext(todo -> eventPublisher.publishEvent(ToDoChangedEvent.completed(todo)));
+    }
+
+    public Mono<ToDoResponse> cancelToDo(Long id) {
+        return toDoRepository.cancelById(id)
+                .flatMap(updated -> updated == 0 ? transitionFailed(id, "is not completed") : getOne(id))
+                .doOnNext(todo -> eventPublisher.publishEvent(ToDoChangedEvent.cancelled(todo)));
+    }
+
+    private Mono<ToDoResponse> transitionFailed(Long id, String reason) {
+        return toDoRepository.existsById(id)
+                .flatMap(exists -> Mono.error(exists
+                        ? new ToDoConflictException(id, reason)
+                        : new ToDoNotFoundException(id)));
+    }
+
+    public Mono<Void> deleteOne(Long id) {
+        return toDoRepository.deleteById(id)
+                .doOnNext(deleted -> eventPublisher.publishEvent(ToDoChangedEvent.deleted(id)))
+                .then();
+    }
+
+    public Mono<Void> deleteAll() {
+        return toDoRepository.deleteAll()
+                .doOnNext(deleted -> eventPublisher.publishEvent(ToDoChangedEvent.allDeleted()))
+                .then();
+    }
+}
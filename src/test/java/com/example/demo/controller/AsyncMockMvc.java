@@ -0,0 +1,27 @@
+package com.example.demo.controller;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Performs a request and, when the handler returned a future, its async dispatch as well,
+ * so expectations are checked against the final response
+ */
+public final class AsyncMockMvc {
+
+    private AsyncMockMvc() {
+    }
+
+    public static ResultActions perform(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        ResultActions actions = mockMvc.perform(request);
+        MvcResult result = actions.andReturn();
+        if (!result.getRequest().isAsyncStarted()) {
+            return actions;
+        }
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
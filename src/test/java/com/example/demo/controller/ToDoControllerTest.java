@@ -1,18 +1,23 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.AsyncConfig;
 import com.example.demo.dto.mapper.ToDoEntityToResponseMapper;
+import com.example.demo.event.ToDoEventFeed;
+import com.example.demo.importer.ToDoImporter;
 import com.example.demo.model.ToDoEntity;
 import com.example.demo.service.ToDoService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.Collections;
 
+import static com.example.demo.controller.AsyncMockMvc.perform;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -20,6 +25,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @WebMvcTest(ToDoController.class)
 @ActiveProfiles(profiles = "test")
+@Import({AsyncConfig.class, ToDoListResponseCache.class})
 class ToDoControllerTest {
 
     @Autowired
@@ -28,6 +34,12 @@ class ToDoControllerTest {
     @MockBean
     private ToDoService toDoService;
 
+    @MockBean
+    private ToDoEventFeed eventFeed;
+
+    @MockBean
+    private ToDoImporter importer;
+
     @Test
     void whenGetAll_thenReturnValidResponse() throws Exception {
         var testText = "My to do text";
@@ -38,8 +50,7 @@ class ToDoControllerTest {
                 )
         );
 
-        this.mockMvc
-                .perform(get("/todos"))
+        perform(this.mockMvc, get("/todos"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isArray())
@@ -1,23 +1,54 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.AsyncConfig;
 import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.event.ToDoEventFeed;
 import com.example.demo.model.ToDoEntity;
 import com.example.demo.repository.ToDoRepository;
+import com.example.demo.service.ToDoService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.GZIPInputStream;
 
+import static com.example.demo.controller.AsyncMockMvc.perform;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,6 +65,18 @@ class ToDoControllerWithServiceAndRepositoryTest {
     @Autowired
     ToDoRepository toDoRepository;
 
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ToDoEventFeed eventFeed;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     @BeforeEach
@@ -51,8 +94,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
 
         // when
         // then
-        this.mockMvc
-                .perform(get("/todos"))
+        perform(this.mockMvc, get("/todos"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isArray())
@@ -75,8 +117,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
 
         // when
         // then
-        this.mockMvc
-                .perform(get("/todos?isCompleted=true"))
+        perform(this.mockMvc, get("/todos?isCompleted=true"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isArray())
@@ -100,8 +141,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
 
         // when
         // then
-        this.mockMvc
-                .perform(get("/todos?isCompleted=false"))
+        perform(this.mockMvc, get("/todos?isCompleted=false"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isArray())
@@ -111,6 +151,101 @@ class ToDoControllerWithServiceAndRepositoryTest {
                 .andExpect(jsonPath("$[0].completedAt").doesNotExist());
     }
 
+    @Test
+    void whenGetPage_thenReturnItemsAfterCursor() throws Exception {
+
+        // given
+        var first = toDoRepository.save(new ToDoEntity("My to do text 1"));
+        var second = toDoRepository.save(new ToDoEntity("My to do text 2"));
+        var third = toDoRepository.save(new ToDoEntity("My to do text 3"));
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].id").value(first.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(second.getId()))
+                .andExpect(jsonPath("$.nextCursor").value(second.getId()));
+
+        perform(this.mockMvc, get("/todos?limit=2&after=" + second.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id").value(third.getId()))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void whenGetCompletedPage_thenReturnOnlyCompletedItems() throws Exception {
+
+        // given
+        String testTextForCompleted = "My to do text for completed";
+        toDoRepository.save(new ToDoEntity("My to do text for in progress"));
+        toDoRepository.save(new ToDoEntity(testTextForCompleted).completeNow());
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos?isCompleted=true&limit=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].text").value(testTextForCompleted))
+                .andExpect(jsonPath("$.items[0].completedAt").exists())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void whenExportInProgress_thenStreamOneJsonObjectPerLine() throws Exception {
+
+        // given
+        String testTextForInProgress1 = "My to do text for in progress 1";
+        String testTextForInProgress2 = "My to do text for in progress 2";
+        toDoRepository.save(new ToDoEntity(testTextForInProgress1));
+        toDoRepository.save(new ToDoEntity("My to do text for completed").completeNow());
+        toDoRepository.save(new ToDoEntity(testTextForInProgress2));
+
+        // when
+        MvcResult result = this.mockMvc
+                .perform(get("/todos?isCompleted=false").accept(ToDoController.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        //an hour by default, not the 30 seconds of the other async requests
+        assertThat(result.getRequest().getAsyncContext().getTimeout()).isEqualTo(3_600_000L);
+
+        // then
+        String body = this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ToDoController.APPLICATION_NDJSON_VALUE))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String[] lines = body.split("\n");
+        assertThat(lines.length).isEqualTo(2);
+        assertThat(mapper.readTree(lines[0]).get("text").asText()).isEqualTo(testTextForInProgress1);
+        assertThat(mapper.readTree(lines[1]).get("text").asText()).isEqualTo(testTextForInProgress2);
+    }
+
+    @Test
+    void whenGetAll_thenRecordServiceAndDatabaseMetrics() throws Exception {
+
+        // given
+        toDoRepository.save(new ToDoEntity("My to do text"));
+
+        // when
+        perform(this.mockMvc, get("/todos"))
+                .andExpect(status().isOk());
+
+        // then
+        var timer = meterRegistry.find(ToDoService.TIMER)
+                .tag("method", "getAll")
+                .timer();
+        assertThat(timer).isNotNull();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(meterRegistry.find("hibernate.query.executions").meter()).isNotNull();
+        assertThat(meterRegistry.find("hikaricp.connections.active").meter()).isNotNull();
+    }
+
     @Test
     void whenIdExist_thenReturnToDoWithItsId() throws Exception {
 
@@ -123,14 +258,54 @@ class ToDoControllerWithServiceAndRepositoryTest {
 
         // when
         // then
-        this.mockMvc
-                .perform(get("/todos/" + id))
+        perform(this.mockMvc, get("/todos/" + id))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.text").value(testText))
                 .andExpect(jsonPath("$.id").value(id))
                 .andExpect(jsonPath("$.completedAt").doesNotExist());
     }
 
+    @Test
+    void whenGetOneTwice_thenSecondIsServedFromCache() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity("My to do text"));
+        var cache = (Cache<?, ?>) cacheManager
+                .getCache(ToDoService.TODOS_CACHE)
+                .getNativeCache();
+
+        // when
+        perform(this.mockMvc, get("/todos/" + todo.getId())).andExpect(status().isOk());
+        perform(this.mockMvc, get("/todos/" + todo.getId())).andExpect(status().isOk());
+
+        // then
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void whenCompleteCancelAndDeleteCachedToDo_thenGetOneIsNeverStale() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity("My to do text"));
+        perform(this.mockMvc, get("/todos/" + todo.getId()))
+                .andExpect(jsonPath("$.completedAt").doesNotExist());
+
+        // when
+        // then
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/complete")).andExpect(status().isOk());
+        perform(this.mockMvc, get("/todos/" + todo.getId()))
+                .andExpect(jsonPath("$.completedAt").exists());
+
+        perform(this.mockMvc, put("/todos/cancel")).andExpect(status().isOk());
+        perform(this.mockMvc, get("/todos/" + todo.getId()))
+                .andExpect(jsonPath("$.completedAt").doesNotExist());
+
+        perform(this.mockMvc, delete("/todos/" + todo.getId())).andExpect(status().isNoContent());
+        perform(this.mockMvc, get("/todos/" + todo.getId()))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void whenIdDoesntExist_thenReturnNotFoundStatus() throws Exception {
 
@@ -139,8 +314,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
 
         // when
         // then
-        this.mockMvc
-                .perform(get("/todos/" + id))
+        perform(this.mockMvc, get("/todos/" + id))
                 .andExpect(status().isNotFound());
     }
 
@@ -155,8 +329,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
         toDoRepository.save(todo);
 
         // when
-        this.mockMvc
-                .perform(put("/todos/" + id + "/complete"))
+        perform(this.mockMvc, put("/todos/" + id + "/complete"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(id))
                 .andExpect(jsonPath("$.text").value(testText))
@@ -177,8 +350,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
         toDoRepository.save(todo);
 
         // when
-        this.mockMvc
-                .perform(put("/todos/" + id + "/cancel"))
+        perform(this.mockMvc, put("/todos/" + id + "/cancel"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(id))
                 .andExpect(jsonPath("$.text").value(testText))
@@ -188,6 +360,46 @@ class ToDoControllerWithServiceAndRepositoryTest {
         assertThat(toDoRepository.findById(id).orElseThrow().getCompletedAt()).isNull();
     }
 
+    @Test
+    void whenCompleteToDoByIds_thenCompleteOnlyThoseInProgress() throws Exception {
+
+        // given
+        var first = toDoRepository.save(new ToDoEntity("My to do text 1"));
+        var second = toDoRepository.save(new ToDoEntity("My to do text 2").completeNow());
+        var third = toDoRepository.save(new ToDoEntity("My to do text 3"));
+        var secondCompletedAt = toDoRepository.findById(second.getId()).orElseThrow().getCompletedAt();
+
+        // when
+        perform(this.mockMvc, put("/todos/complete")
+                        .content(mapper.writeValueAsString(List.of(first.getId(), second.getId())))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(1));
+
+        // then
+        assertThat(toDoRepository.findById(first.getId()).orElseThrow().getCompletedAt()).isNotNull();
+        assertThat(toDoRepository.findById(second.getId()).orElseThrow().getCompletedAt())
+                .isEqualTo(secondCompletedAt);
+        assertThat(toDoRepository.findById(third.getId()).orElseThrow().getCompletedAt()).isNull();
+    }
+
+    @Test
+    void whenCancelAllToDo_thenCancelEveryCompleted() throws Exception {
+
+        // given
+        toDoRepository.save(new ToDoEntity("My to do text 1").completeNow());
+        toDoRepository.save(new ToDoEntity("My to do text 2").completeNow());
+        toDoRepository.save(new ToDoEntity("My to do text 3"));
+
+        // when
+        perform(this.mockMvc, put("/todos/cancel"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(2));
+
+        // then
+        assertThat(toDoRepository.findAll().stream().allMatch(todo -> todo.getCompletedAt() == null)).isTrue();
+    }
+
     @Test
     void whenSaveToDo_thenFindToDoByItsId() throws Exception {
 
@@ -197,8 +409,7 @@ class ToDoControllerWithServiceAndRepositoryTest {
         ToDoEntity todo = new ToDoEntity(id, testText);
 
         // when
-        this.mockMvc
-                .perform(post("/todos")
+        perform(this.mockMvc, post("/todos")
                         .content(mapper.writeValueAsString(todo))
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
@@ -208,7 +419,138 @@ class ToDoControllerWithServiceAndRepositoryTest {
                 .andExpect(jsonPath("$.completedAt").doesNotExist());
 
         // then
-        assertThat(toDoRepository.findById(id).orElseThrow()).isEqualToComparingFieldByField(todo);
+        //the version is drawn when the todo is saved
+        assertThat(toDoRepository.findById(id).orElseThrow()).isEqualToIgnoringGivenFields(todo, "version");
+    }
+
+    @Test
+    void whenUpsertWithId_thenRunExactlyOneStatementAlsoPastABlockOfIds() throws Exception {
+
+        // given
+        //more than the block of 50 ids the generator holds in memory, so a block would run out on the way
+        int upserts = 60;
+        var existing = toDoRepository.save(new ToDoEntity("My to do text before update"));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // when
+        statistics.clear();
+        for (int i = 0; i < upserts; i++) {
+            upsert(existing.getId(), "My to do text after update " + i)
+                    .andExpect(jsonPath("$.id").value(existing.getId()));
+        }
+        long updateStatements = statistics.getPrepareStatementCount();
+        statistics.clear();
+        List<Long> createdIds = new ArrayList<>();
+        for (int i = 0; i < upserts; i++) {
+            var created = upsert(-1L - i, "My new to do text " + i).andReturn().getResponse().getContentAsString();
+            createdIds.add(mapper.readTree(created).get("id").asLong());
+        }
+        long createStatements = statistics.getPrepareStatementCount();
+        var generated = toDoRepository.save(new ToDoEntity("My generated to do text"));
+
+        // then
+        //the id of an insert is drawn by the statement itself, never with a statement of its own
+        assertThat(updateStatements).isEqualTo(upserts);
+        assertThat(createStatements).isEqualTo(upserts);
+        var updated = toDoRepository.findById(existing.getId()).orElseThrow();
+        assertThat(updated.getText()).isEqualTo("My to do text after update " + (upserts - 1));
+        assertThat(updated.getVersion()).isGreaterThan(existing.getVersion());
+        assertThat(createdIds.stream().distinct().count()).isEqualTo(upserts);
+        assertThat(createdIds.stream().allMatch(id -> id > 0)).isTrue();
+        assertThat(createdIds.stream().noneMatch(id -> id.equals(existing.getId()) || id.equals(generated.getId()))).isTrue();
+        var inserted = toDoRepository.findById(createdIds.get(upserts - 1)).orElseThrow();
+        assertThat(inserted.getText()).isEqualTo("My new to do text " + (upserts - 1));
+        assertThat(inserted.getVersion()).isGreaterThan(updated.getVersion());
+    }
+
+    @Test
+    void whenUpsertAndCompleteSameIdConcurrently_thenCompletionIsNotLost() throws Exception {
+
+        // given
+        int threads = 8;
+        int upsertsPerThread = 50;
+        var todo = toDoRepository.save(new ToDoEntity("My to do text"));
+        long id = todo.getId();
+        var upserts = new AtomicInteger();
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < upsertsPerThread; i++) {
+                    upsert(id, "My to do text " + thread + "-" + i).andExpect(status().isOk());
+                    upserts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            //in the middle of the upserts, an upsert that read the row before would write it back in progress
+            while (upserts.get() < threads * upsertsPerThread / 2) {
+                Thread.sleep(1);
+            }
+            perform(this.mockMvc, put("/todos/" + id + "/complete")).andExpect(status().isOk());
+            return null;
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        // then
+        assertThat(toDoRepository.count()).isEqualTo(1);
+        var result = toDoRepository.findById(id).orElseThrow();
+        assertThat(result.getCompletedAt()).isNotNull();
+        assertThat(result.getVersion()).isGreaterThan(todo.getVersion());
+    }
+
+    @Test
+    void whenSaveToDoBatch_thenUpdateExistingAndCreateNew() throws Exception {
+
+        // given
+        var existing = toDoRepository.save(new ToDoEntity("My to do text before update"));
+        String updatedText = "My to do text after update";
+        String createdText = "My to do text for created";
+        var updateRequest = new ToDoSaveRequest();
+        updateRequest.id = existing.getId();
+        updateRequest.text = updatedText;
+        var createRequest = new ToDoSaveRequest();
+        createRequest.text = createdText;
+
+        // when
+        perform(this.mockMvc, post("/todos/batch")
+                        .content(mapper.writeValueAsString(List.of(updateRequest, createRequest)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(existing.getId()))
+                .andExpect(jsonPath("$[0].text").value(updatedText))
+                .andExpect(jsonPath("$[1].id").isNumber())
+                .andExpect(jsonPath("$[1].text").value(createdText));
+
+        // then
+        assertThat(toDoRepository.count()).isEqualTo(2);
+        assertThat(toDoRepository.findById(existing.getId()).orElseThrow().getText()).isEqualTo(updatedText);
+    }
+
+    @Test
+    void whenSaveToDoBatchWithoutText_thenReturnBadRequest() throws Exception {
+
+        // given
+        var invalidRequest = new ToDoSaveRequest();
+
+        // when
+        perform(this.mockMvc, post("/todos/batch")
+                        .content(mapper.writeValueAsString(List.of(invalidRequest)))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        // then
+        assertThat(toDoRepository.count()).isZero();
     }
 
     @Test
@@ -222,14 +564,25 @@ class ToDoControllerWithServiceAndRepositoryTest {
         toDoRepository.save(todo);
 
         // when
-        this.mockMvc
-                .perform(delete("/todos/" + id))
+        perform(this.mockMvc, delete("/todos/" + id))
                 .andExpect(status().isNoContent());
 
         // then
         assertThat(toDoRepository.findById(id)).isNotPresent();
     }
 
+    @Test
+    void whenDeleteToDoByIdThatDoesntExist_thenReturnNoContent() throws Exception {
+
+        // given
+        long id = 1L;
+
+        // when
+        // then
+        perform(this.mockMvc, delete("/todos/" + id))
+                .andExpect(status().isNoContent());
+    }
+
     @Test
     void whenDeleteAllToDo_thenFindAllToDoReturnsEmptyList() throws Exception {
 
@@ -242,11 +595,582 @@ class ToDoControllerWithServiceAndRepositoryTest {
         toDoRepository.save(new ToDoEntity(2L, testTextForInProgress));
 
         // when
-        this.mockMvc
-                .perform(delete("/todos"))
+        perform(this.mockMvc, delete("/todos"))
                 .andExpect(status().isNoContent());
 
         // then
         assertThat(toDoRepository.findAll().isEmpty()).isTrue();
     }
+
+    @Test
+    void whenGetOneWithMatchingETag_thenReturnNotModifiedUntilToDoChanges() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+        String eTag = perform(this.mockMvc, get("/todos/" + todo.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos/" + todo.getId()).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(content().string(""));
+
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/complete"))
+                .andExpect(status().isOk());
+
+        perform(this.mockMvc, get("/todos/" + todo.getId()).header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.completedAt").exists())
+                .andExpect(jsonPath("$.version").doesNotExist())
+                .andExpect(result -> assertThat(result.getResponse().getHeader("ETag")).isNotEqualTo(eTag));
+    }
+
+    @Test
+    void whenOneTodoLeavesAndAnotherJoinsTheList_thenETagChanges() throws Exception {
+
+        // given
+        var joining = toDoRepository.save(new ToDoEntity("In progress, then completed"));
+        var leaving = toDoRepository.save(new ToDoEntity("Completed, then cancelled"));
+        var staying = toDoRepository.save(new ToDoEntity("Stays completed"));
+        perform(this.mockMvc, put("/todos/" + leaving.getId() + "/complete"))
+                .andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/" + staying.getId() + "/complete"))
+                .andExpect(status().isOk());
+        String eTag = perform(this.mockMvc, get("/todos").param("isCompleted", "true"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // when
+        perform(this.mockMvc, put("/todos/" + leaving.getId() + "/cancel"))
+                .andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/" + joining.getId() + "/complete"))
+                .andExpect(status().isOk());
+
+        // then
+        //same size and highest id as before, and with a counter per todo the same sum of versions too
+        perform(this.mockMvc, get("/todos").param("isCompleted", "true").header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(result -> assertThat(result.getResponse().getHeader("ETag")).isNotEqualTo(eTag));
+    }
+
+    @Test
+    void whenGetAllWithMatchingETag_thenReturnNotModifiedUntilListChanges() throws Exception {
+
+        // given
+        toDoRepository.save(new ToDoEntity(1L, "My to do text 1"));
+        String eTag = perform(this.mockMvc, get("/todos").param("isCompleted", "false"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos").param("isCompleted", "false").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        toDoRepository.save(new ToDoEntity(2L, "My to do text 2"));
+
+        perform(this.mockMvc, get("/todos").param("isCompleted", "false").header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(result -> assertThat(result.getResponse().getHeader("ETag")).isNotEqualTo(eTag));
+    }
+
+    @Test
+    void whenCompleteToDoTwice_thenReturnConflict() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/complete"))
+                .andExpect(status().isOk());
+
+        // when
+        // then
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/complete"))
+                .andExpect(status().isConflict());
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/cancel"))
+                .andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/cancel"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void whenCompleteAndCancelConcurrently_thenEveryTransitionIsAppliedExactlyOnce() throws Exception {
+
+        // given
+        int todoCount = 16;
+        int threads = 8;
+        int transitionsPerThread = 500;
+        var ids = new ArrayList<Long>();
+        var versions = new ArrayList<Long>();
+        for (int i = 0; i < todoCount; i++) {
+            var todo = toDoRepository.save(new ToDoEntity("My to do text " + i));
+            ids.add(todo.getId());
+            versions.add(todo.getVersion());
+        }
+        var completed = new AtomicIntegerArray(todoCount);
+        var cancelled = new AtomicIntegerArray(todoCount);
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < transitionsPerThread; i++) {
+                    int index = random.nextInt(todoCount);
+                    boolean complete = random.nextBoolean();
+                    String transition = complete ? "/complete" : "/cancel";
+                    int status = perform(this.mockMvc, put("/todos/" + ids.get(index) + transition))
+                            .andReturn().getResponse().getStatus();
+                    assertThat(status == 200 || status == 409).isTrue();
+                    if (status == 200) {
+                        (complete ? completed : cancelled).incrementAndGet(index);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        // then
+        for (int i = 0; i < todoCount; i++) {
+            var todo = toDoRepository.findById(ids.get(i)).orElseThrow();
+            //a todo alternates between in progress and completed, so no transition can be lost or doubled
+            int difference = completed.get(i) - cancelled.get(i);
+            assertThat(difference).isEqualTo(todo.getCompletedAt() == null ? 0 : 1);
+            if (completed.get(i) + cancelled.get(i) > 0) {
+                assertThat(todo.getVersion()).isGreaterThan(versions.get(i));
+            } else {
+                assertThat(todo.getVersion()).isEqualTo(versions.get(i));
+            }
+        }
+    }
+
+    @Test
+    void whenSearch_thenReturnMatchingToDosOfTheFilter() throws Exception {
+
+        // given
+        for (String text : List.of("Buy milk", "Buy bread and milk", "Walk the dog")) {
+            perform(this.mockMvc, post("/todos")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"text\":\"" + text + "\"}"))
+                    .andExpect(status().isOk());
+        }
+        Long breadId = toDoRepository.findAll().stream()
+                .filter(todo -> todo.getText().contains("bread"))
+                .findFirst().orElseThrow().getId();
+        perform(this.mockMvc, put("/todos/" + breadId + "/complete")).andExpect(status().isOk());
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos").param("q", "MILK bread"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].text").value("Buy bread and milk"))
+                .andExpect(jsonPath("$[1].text").value("Buy milk"));
+        perform(this.mockMvc, get("/todos").param("q", "milk").param("isCompleted", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].text").value("Buy milk"));
+
+        perform(this.mockMvc, delete("/todos/" + breadId)).andExpect(status().isNoContent());
+        perform(this.mockMvc, get("/todos").param("q", "bread"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    void whenGetOne_thenRunOnDatabaseExecutorAndPublishItsQueue() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+
+        // when
+        MvcResult result = this.mockMvc
+                .perform(get("/todos/" + todo.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(todo.getId()));
+        var completed = meterRegistry.find("executor.completed")
+                .tag("name", AsyncConfig.DATABASE_EXECUTOR)
+                .functionCounter();
+        assertThat(completed).isNotNull();
+        assertThat(completed.count()).isGreaterThanOrEqualTo(1.0);
+        assertThat(meterRegistry.find("executor.queued").tag("name", AsyncConfig.DATABASE_EXECUTOR).gauge())
+                .isNotNull();
+    }
+
+    @Test
+    void whenSubscribedToEvents_thenReceiveEveryChange() throws Exception {
+
+        // given
+        MvcResult events = this.mockMvc
+                .perform(get("/todos/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        var todo = toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+
+        // when
+        perform(this.mockMvc, post("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"text\":\"New to do\"}"))
+                .andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/" + todo.getId() + "/complete"))
+                .andExpect(status().isOk());
+        perform(this.mockMvc, delete("/todos/" + todo.getId()))
+                .andExpect(status().isNoContent());
+
+        // then
+        String content = awaitEvents(events, "event:deleted");
+        assertThat(content).contains("id:1\nevent:created\ndata:{\"id\":");
+        assertThat(content).contains("id:2\nevent:completed\ndata:{\"id\":" + todo.getId());
+        assertThat(content).contains("id:3\nevent:deleted\ndata:{\"id\":" + todo.getId() + "}");
+    }
+
+    @Test
+    void whenTooManySubscribers_thenRejectWithServiceUnavailable() throws Exception {
+
+        // when
+        int subscribed = 0;
+        while (subscribed < 10_000) {
+            try {
+                eventFeed.subscribe(null);
+                subscribed++;
+            } catch (TaskRejectedException e) {
+                break;
+            }
+        }
+
+        // then
+        assertThat(subscribed).isEqualTo(eventFeed.subscriberCount());
+        assertThat(subscribed).isLessThan(10_000);
+        this.mockMvc.perform(get("/todos/events"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void whenSubscribersAreStuckInSends_thenOthersStillReceiveEventsAndStuckOnesAreDropped() throws Exception {
+
+        // given
+        List<SseEmitter> stuck = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            stuck.add(eventFeed.subscribe(null));
+        }
+        //a send holds the lock of its emitter, holding it first blocks every send like a client that reads nothing
+        var locked = new CountDownLatch(stuck.size());
+        var release = new CountDownLatch(1);
+        ExecutorService holders = Executors.newFixedThreadPool(stuck.size());
+        for (SseEmitter emitter : stuck) {
+            holders.execute(() -> {
+                synchronized (emitter) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        locked.await();
+        MvcResult events = this.mockMvc
+                .perform(get("/todos/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        try {
+            // when
+            perform(this.mockMvc, post("/todos")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"text\":\"New to do\"}"))
+                    .andExpect(status().isOk());
+            awaitEvents(events, "event:created");
+            for (int i = 0; i < 1024; i++) {
+                eventFeed.onChange(ToDoChangedEvent.bulkUpdated());
+            }
+
+            // then
+            assertThat(eventFeed.subscriberCount()).isEqualTo(1);
+            assertThat(meterRegistry.counter("todo.events.dropped").count()).isEqualTo(stuck.size());
+        } finally {
+            release.countDown();
+            holders.shutdown();
+        }
+    }
+
+    @Test
+    void whenResumingWithLastEventId_thenReplayOnlyTheEventsAfterIt() throws Exception {
+
+        // given
+        for (int i = 0; i < 3; i++) {
+            perform(this.mockMvc, post("/todos")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"text\":\"To do " + i + "\"}"))
+                    .andExpect(status().isOk());
+        }
+
+        // when
+        MvcResult events = this.mockMvc
+                .perform(get("/todos/events").header("Last-Event-ID", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        String content = awaitEvents(events, "id:3\n");
+        assertThat(content).doesNotContain("id:1\n");
+        assertThat(content).contains("id:2\nevent:created");
+    }
+
+    @Test
+    void whenResumingWithUnknownLastEventId_thenSendReset() throws Exception {
+
+        // when
+        MvcResult events = this.mockMvc
+                .perform(get("/todos/events").header("Last-Event-ID", "1000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        assertThat(awaitEvents(events, "event:reset")).contains("event:reset\ndata:{}");
+    }
+
+    @Test
+    void whenImportCsv_thenSaveValidRowsAndReportSkippedOnes() throws Exception {
+
+        // given
+        var todo = toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+        String csv = "id,text\n"
+                + todo.getId() + ",Updated text\n"
+                + ",Imported text\n"
+                + "x,Bad id\n";
+
+        // when
+        // then
+        perform(this.mockMvc, post("/todos/import")
+                .contentType(ToDoController.TEXT_CSV_VALUE)
+                .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.skipped").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(4));
+        assertThat(toDoRepository.findById(todo.getId()).orElseThrow().getText()).isEqualTo("Updated text");
+        assertThat(toDoRepository.count()).isEqualTo(2L);
+    }
+
+    @Test
+    void whenGetAllAsCbor_thenReturnCompletedAtAsEpochMillis() throws Exception {
+
+        // given
+        var completedAt = ZonedDateTime.of(2020, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        toDoRepository.save(new ToDoEntity(1L, "My to do text", completedAt));
+
+        // when
+        MvcResult result = perform(this.mockMvc, get("/todos").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+                .andReturn();
+
+        // then
+        var todos = new ObjectMapper(new CBORFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertThat(todos.get(0).get("text").asText()).isEqualTo("My to do text");
+        assertThat(todos.get(0).get("completedAt").asLong()).isEqualTo(completedAt.toInstant().toEpochMilli());
+    }
+
+    @Test
+    void whenGetAllWithGzip_thenServeCachedBytesUntilToDosChange() throws Exception {
+
+        // given
+        toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+        byte[] first = perform(this.mockMvc, get("/todos?isCompleted=false").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // when
+        byte[] second = perform(this.mockMvc, get("/todos?isCompleted=false").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        perform(this.mockMvc, put("/todos/complete"))
+                .andExpect(status().isOk());
+        byte[] afterChange = perform(this.mockMvc, get("/todos?isCompleted=false").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // then
+        assertThat(second).isEqualTo(first);
+        assertThat(mapper.readTree(gunzip(first)).size()).isEqualTo(1);
+        assertThat(mapper.readTree(gunzip(first)).get(0).get("text").asText()).isEqualTo("My to do text");
+        assertThat(mapper.readTree(gunzip(afterChange)).size()).isEqualTo(0);
+    }
+
+    @Test
+    void whenGetAllWithAndWithoutGzip_thenEachEncodingHasItsOwnETag() throws Exception {
+
+        // given
+        toDoRepository.save(new ToDoEntity(1L, "My to do text"));
+
+        // when
+        String identityETag = perform(this.mockMvc, get("/todos"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", containsString("Accept-Encoding")))
+                .andReturn().getResponse().getHeader("ETag");
+        String gzipETag = perform(this.mockMvc, get("/todos").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", containsString("Accept-Encoding")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // then
+        assertThat(gzipETag).isNotEqualTo(identityETag);
+        assertThat(gzipETag).endsWith("-gzip\"");
+        perform(this.mockMvc, get("/todos").header("Accept-Encoding", "gzip").header("If-None-Match", identityETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", gzipETag));
+        perform(this.mockMvc, get("/todos").header("If-None-Match", gzipETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", identityETag));
+    }
+
+    @Test
+    void whenGetAllCompletedInRange_thenReturnOnlyToDosCompletedInIt() throws Exception {
+
+        // given
+        var monday = ZonedDateTime.of(2020, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+        toDoRepository.save(new ToDoEntity(1L, "Before the range", monday.minusSeconds(1)));
+        toDoRepository.save(new ToDoEntity(2L, "At the start", monday));
+        toDoRepository.save(new ToDoEntity(3L, "Inside", monday.plusDays(3)));
+        toDoRepository.save(new ToDoEntity(4L, "At the end", monday.plusDays(7)));
+        toDoRepository.save(new ToDoEntity(5L, "In progress"));
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos")
+                .param("completedAfter", "2020-03-02T00:00:00Z")
+                .param("completedBefore", "2020-03-09T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].text").value("At the start"))
+                .andExpect(jsonPath("$[1].text").value("Inside"));
+        perform(this.mockMvc, get("/todos").param("completedBefore", "2020-03-02T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].text").value("Before the range"));
+        perform(this.mockMvc, get("/todos?isCompleted=false").param("completedAfter", "2020-03-02T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    void whenGetCompletionHistogram_thenCountPerBucketInDatabase() throws Exception {
+
+        // given
+        var day = ZonedDateTime.of(2020, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+        toDoRepository.save(new ToDoEntity(1L, "First hour", day.plusMinutes(5)));
+        toDoRepository.save(new ToDoEntity(2L, "First hour too", day.plusMinutes(55)));
+        toDoRepository.save(new ToDoEntity(3L, "Afternoon", day.plusHours(14)));
+        toDoRepository.save(new ToDoEntity(4L, "Next day", day.plusDays(1).plusHours(9)));
+        toDoRepository.save(new ToDoEntity(5L, "In progress"));
+
+        // when
+        // then
+        perform(this.mockMvc, get("/todos/stats/completions?bucket=hour")
+                .param("completedBefore", "2020-03-03T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].start").value("2020-03-02T00:00:00Z"))
+                .andExpect(jsonPath("$[0].count").value(2))
+                .andExpect(jsonPath("$[1].start").value("2020-03-02T14:00:00Z"))
+                .andExpect(jsonPath("$[1].count").value(1));
+        perform(this.mockMvc, get("/todos/stats/completions?bucket=day"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].start").value("2020-03-02T00:00:00Z"))
+                .andExpect(jsonPath("$[0].count").value(3))
+                .andExpect(jsonPath("$[1].start").value("2020-03-03T00:00:00Z"))
+                .andExpect(jsonPath("$[1].count").value(1));
+        perform(this.mockMvc, get("/todos/stats/completions?bucket=week"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void whenCompletedAndCancelled_thenHistogramCountsTheCompletedHour() throws Exception {
+
+        // given
+        var day = ZonedDateTime.of(2020, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+        toDoRepository.save(new ToDoEntity(1L, "Cancelled", day.plusHours(3)));
+        toDoRepository.save(new ToDoEntity(2L, "Completed one by one"));
+        toDoRepository.save(new ToDoEntity(3L, "Completed in bulk"));
+        var hour = ZonedDateTime.now(ZoneOffset.UTC).withMinute(0).withSecond(0).withNano(0);
+
+        // when
+        perform(this.mockMvc, put("/todos/1/cancel")).andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/2/complete")).andExpect(status().isOk());
+        perform(this.mockMvc, put("/todos/complete")
+                .content("[3]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        // then
+        //the persisted hour follows every statement that completes or cancels a todo
+        var buckets = mapper.readTree(perform(this.mockMvc, get("/todos/stats/completions?bucket=hour")
+                .param("completedAfter", hour.minusHours(1).toString()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        long completed = 0;
+        for (var bucket : buckets) {
+            assertThat(ZonedDateTime.parse(bucket.get("start").asText())).isAfterOrEqualTo(hour.minusHours(1));
+            completed += bucket.get("count").asLong();
+        }
+        assertThat(completed).isEqualTo(2);
+        perform(this.mockMvc, get("/todos/stats/completions?bucket=day")
+                .param("completedBefore", "2020-03-03T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    private ResultActions upsert(long id, String text) throws Exception {
+        var request = new ToDoSaveRequest();
+        request.id = id;
+        request.text = text;
+        return perform(this.mockMvc, post("/todos")
+                .content(mapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String awaitEvents(MvcResult events, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = events.getResponse().getContentAsString();
+        //events are sent from other threads, an event is only complete once the blank line after it is written
+        while (!(content.contains(expected) && content.endsWith("\n\n")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            content = events.getResponse().getContentAsString();
+        }
+        assertThat(content).contains(expected);
+        return content;
+    }
 }
@@ -9,7 +9,9 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static com.example.demo.controller.AsyncMockMvc.perform;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -18,15 +20,22 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import java.util.Arrays;
 import java.util.Collections;
 
+import com.example.demo.config.AsyncConfig;
+import com.example.demo.dto.mapper.ToDoEntityToResponseMapper;
+import com.example.demo.event.ToDoEventFeed;
+import com.example.demo.importer.ToDoImporter;
 import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoArchiveRepository;
 import com.example.demo.repository.ToDoRepository;
+import com.example.demo.search.ToDoSearchIndex;
+import com.example.demo.sharding.ToDoShards;
 import com.example.demo.service.ToDoService;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 @WebMvcTest(ToDoController.class)
 @ActiveProfiles(profiles = "test")
-@Import(ToDoService.class)
+@Import({ToDoService.class, ToDoSearchIndex.class, ToDoShards.class, AsyncConfig.class, ToDoListResponseCache.class})
 class ToDoControllerWithServiceTest {
 
 	@Autowired
@@ -35,17 +44,25 @@ class ToDoControllerWithServiceTest {
 	@MockBean
 	private ToDoRepository toDoRepository;
 
+	@MockBean
+	private ToDoArchiveRepository archiveRepository;
+
+	@MockBean
+	private ToDoEventFeed eventFeed;
+
+	@MockBean
+	private ToDoImporter importer;
+
 	@Test
 	void whenGetAll_thenReturnValidResponse() throws Exception {
 		var testText = "My to do text";
-		when(toDoRepository.findAll()).thenReturn(
+		when(toDoRepository.findAllResponses(any())).thenReturn(
 				Collections.singletonList(
-						new ToDoEntity(1L, testText)
+						ToDoEntityToResponseMapper.map(new ToDoEntity(1L, testText))
 				)
 		);
 		
-		this.mockMvc
-			.perform(get("/todos"))
+		perform(this.mockMvc, get("/todos"))
 			.andExpect(status().isOk())
 			.andExpect(content().contentType(MediaType.APPLICATION_JSON))
 			.andExpect(jsonPath("$").isArray())
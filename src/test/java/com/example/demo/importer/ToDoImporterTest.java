@@ -0,0 +1,154 @@
+package com.example.demo.importer;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoPartiallySavedException;
+import com.example.demo.service.ToDoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.Validation;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ToDoImporterTest {
+
+    private ToDoService toDoService;
+
+    private ToDoImporter importer;
+
+    private final List<List<ToDoSaveRequest>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        this.toDoService = mock(ToDoService.class);
+        when(toDoService.upsertAll(anyList())).thenAnswer(i -> {
+            batches.add(new ArrayList<>(i.getArgument(0)));
+            return List.of();
+        });
+        this.importer = new ToDoImporter(
+                toDoService,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper(),
+                new SimpleMeterRegistry(),
+                2,
+                10
+        );
+    }
+
+    @Test
+    void whenImportCsv_thenSaveInBatchesAndSkipBadRows() throws IOException {
+        //call
+        var result = importer.importTodos(new StringReader(
+                "id,text\r\n"
+                        + ",Buy bread\r\n"
+                        + "7,\"Call mom, \"\"today\"\"\"\r\n"
+                        + "x,Bad id\r\n"
+                        + ",\"Two\nlines\"\r\n"
+                        + "8\r\n"
+        ), ToDoImporter.Format.CSV);
+
+        //validate
+        assertEquals(3, result.imported);
+        assertEquals(2, result.skipped);
+        assertEquals(4, result.errors.get(0).line);
+        assertEquals("id: not a number", result.errors.get(0).message);
+        assertEquals(7, result.errors.get(1).line);
+        assertEquals("text: must not be null", result.errors.get(1).message);
+        assertEquals(2, batches.size());
+        assertEquals(7L, batches.get(0).get(1).id);
+        assertEquals("Call mom, \"today\"", batches.get(0).get(1).text);
+        assertEquals("Two\nlines", batches.get(1).get(0).text);
+    }
+
+    @Test
+    void whenImportNdjson_thenSkipMalformedLines() throws IOException {
+        //call
+        var result = importer.importTodos(new StringReader(
+                "{\"text\":\"Buy bread\"}\n"
+                        + "{\"text\":\n"
+                        + "\n"
+                        + "{\"id\":3}\n"
+                        + "{\"id\":3,\"text\":\"Call mom\"}\n"
+        ), ToDoImporter.Format.NDJSON);
+
+        //validate
+        assertEquals(2, result.imported);
+        assertEquals(2, result.skipped);
+        assertEquals(2, result.errors.get(0).line);
+        assertEquals(4, result.errors.get(1).line);
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void whenImportNdjsonWithNullLine_thenSkipOnlyThatLine() throws IOException {
+        //call
+        var result = importer.importTodos(new StringReader(
+                "{\"text\":\"Buy bread\"}\n"
+                        + "null\n"
+                        + "{\"text\":\"Call mom\"}\n"
+        ), ToDoImporter.Format.NDJSON);
+
+        //validate
+        assertEquals(2, result.imported);
+        assertEquals(1, result.skipped);
+        assertEquals(2, result.errors.get(0).line);
+        assertEquals("not a todo", result.errors.get(0).message);
+    }
+
+    @Test
+    void whenBatchFails_thenSaveRowsOneByOneAndSkipRefusedOnes() throws IOException {
+        //mock
+        when(toDoService.upsertAll(anyList())).thenAnswer(i -> {
+            List<ToDoSaveRequest> batch = i.getArgument(0);
+            if (batch.stream().anyMatch(request -> request.text.equals("Refused"))) {
+                throw new IllegalStateException("value too long");
+            }
+            batches.add(new ArrayList<>(batch));
+            return List.of();
+        });
+
+        //call
+        var result = importer.importTodos(new StringReader("Accepted\nRefused\n"), ToDoImporter.Format.CSV);
+
+        //validate
+        assertEquals(1, result.imported);
+        assertEquals(1, result.skipped);
+        assertEquals(2, result.errors.get(0).line);
+        assertEquals("cannot be saved: value too long", result.errors.get(0).message);
+        verify(toDoService, times(3)).upsertAll(anyList());
+    }
+
+    @Test
+    void whenBatchSavedOnSomeShards_thenRetryOnlyTheOtherRows() throws IOException {
+        //mock
+        doAnswer(i -> {
+            List<ToDoSaveRequest> batch = i.getArgument(0);
+            batches.add(new ArrayList<>(batch));
+            if (batch.size() > 1) {
+                var saved = new ToDoResponse(1L, batch.get(0).text, null, 1L);
+                throw new ToDoPartiallySavedException(Arrays.asList(saved, null), new IllegalStateException("shard down"));
+            }
+            return List.of();
+        }).when(toDoService).upsertAll(anyList());
+
+        //call
+        var result = importer.importTodos(new StringReader("Saved\nNot saved\n"), ToDoImporter.Format.CSV);
+
+        //validate
+        assertEquals(2, result.imported);
+        assertEquals(0, result.skipped);
+        assertEquals(2, batches.size());
+        assertEquals(1, batches.get(1).size());
+        assertEquals("Not saved", batches.get(1).get(0).text);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.replica;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.service.ToDoService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.example.demo.controller.AsyncMockMvc.perform;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-test-primary",
+        "todo.replicas.urls=" + ReplicaRoutingTest.REPLICA_0 + "," + ReplicaRoutingTest.REPLICA_1,
+        "todo.replicas.health-check-interval-ms=3600000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles(profiles = {"test", "replicas"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReplicaRoutingTest {
+
+    private static final String SCHEMA = ";INIT=RUNSCRIPT FROM 'classpath:replica-schema.sql'";
+
+    static final String REPLICA_0 = "jdbc:h2:mem:replica-test-0" + SCHEMA;
+
+    static final String REPLICA_1 = "jdbc:h2:mem:replica-test-1" + SCHEMA;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    ToDoService toDoService;
+
+    @Autowired
+    DataSource dataSource;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        routingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        //tell the databases apart by what they hold
+        for (int replica = 0; replica < 2; replica++) {
+            new JdbcTemplate(routingDataSource.getReplicas().get(replica)).update(
+                    "insert into to_do_entity (id, text, version) values (?, ?, 0)", 100 + replica, "Replica " + replica);
+        }
+    }
+
+    @Test
+    void whenReadOnly_thenReadFromReplicasInTurn() {
+        // when
+        Set<String> texts = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            texts.addAll(toDoService.getAll().stream().map(todo -> todo.text).collect(Collectors.toList()));
+        }
+        ToDoResponse created = toDoService.upsert(saveRequest("Written to the primary"));
+
+        // then
+        assertEquals(Set.of("Replica 0", "Replica 1"), texts);
+        assertEquals(1, count(routingDataSource.getPrimary(), created.id));
+        for (int replica = 0; replica < 2; replica++) {
+            assertEquals(0, count(routingDataSource.getReplicas().get(replica), created.id));
+        }
+    }
+
+    @Test
+    void whenReplicaUnhealthy_thenReadFromTheOthers() {
+        // given
+        ((HikariDataSource) routingDataSource.getReplicas().get(0)).close();
+
+        // when
+        routingDataSource.checkHealth();
+        Set<String> texts = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            texts.addAll(toDoService.getAll().stream().map(todo -> todo.text).collect(Collectors.toList()));
+        }
+
+        // then
+        assertEquals(1, routingDataSource.healthyCount());
+        assertEquals(Set.of("Replica 1"), texts);
+    }
+
+    @Test
+    void whenGetOne_thenLoadFromPrimaryBeforeCaching() throws Exception {
+        // given
+        new JdbcTemplate(routingDataSource.getPrimary()).update(
+                "insert into to_do_entity (id, text, version) values (100, 'Primary', 1)");
+
+        // when
+        ToDoResponse todo = toDoService.getOne(100L);
+
+        // then
+        assertEquals("Primary", todo.text);
+        assertEquals("Primary", toDoService.getOne(100L).text);
+    }
+
+    @Test
+    void whenClientChangedTodos_thenReadItsWritesFromPrimary() throws Exception {
+        // given
+        MvcResult created = perform(mockMvc, post("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"text\":\"Written to the primary\"}"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists(ReadYourWritesFilter.COOKIE))
+                .andReturn();
+        Cookie primaryUntil = created.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+
+        // then
+        perform(mockMvc, get("/todos?limit=10").cookie(primaryUntil))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].text").value("Written to the primary"));
+        perform(mockMvc, get("/todos?limit=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].text").value(startsWith("Replica")));
+    }
+
+    private static long count(DataSource dataSource, Long id) {
+        return new JdbcTemplate(dataSource)
+                .queryForObject("select count(*) from to_do_entity where id = ?", Long.class, id);
+    }
+
+    private static ToDoSaveRequest saveRequest(String text) {
+        var request = new ToDoSaveRequest();
+        request.text = text;
+        return request;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.demo.search;
+
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoRepository;
+import com.example.demo.sharding.ToDoShards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ToDoSearchIndexTest {
+
+    private ToDoRepository toDoRepository;
+
+    private ToDoSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        toDoRepository = mock(ToDoRepository.class);
+        searchIndex = new ToDoSearchIndex(toDoRepository, new ToDoShards(List.of(), null));
+    }
+
+    @Test
+    void whenSearch_thenRankByTermFrequencyAndRarity() {
+        //mock
+        searchIndex.put(1L, "Buy milk");
+        searchIndex.put(2L, "Milk, milk and more milk!");
+        searchIndex.put(3L, "Buy bread");
+
+        //call
+        //validate
+        assertEquals(List.of(2L, 1L), searchIndex.search("milk"));
+        assertEquals(List.of(3L, 1L), searchIndex.search("buy BREAD"));
+        assertEquals(List.of(), searchIndex.search("cheese"));
+    }
+
+    @Test
+    void whenTextChanged_thenOldWordsAreNotFound() {
+        //mock
+        searchIndex.put(1L, "Buy milk");
+
+        //call
+        searchIndex.onChange(ToDoChangedEvent.updated(List.of(new ToDoResponse(1L, "Buy bread", null, 1))));
+
+        //validate
+        assertEquals(List.of(), searchIndex.search("milk"));
+        assertEquals(List.of(1L), searchIndex.search("bread"));
+    }
+
+    @Test
+    void whenDeleted_thenNotFound() {
+        //mock
+        searchIndex.put(1L, "Buy milk");
+        searchIndex.put(2L, "Drink milk");
+
+        //call
+        searchIndex.onChange(ToDoChangedEvent.deleted(1L));
+
+        //validate
+        assertEquals(List.of(2L), searchIndex.search("milk"));
+
+        //call
+        searchIndex.onChange(ToDoChangedEvent.allDeleted());
+
+        //validate
+        assertEquals(List.of(), searchIndex.search("milk"));
+    }
+
+    @Test
+    void whenChangedDuringRebuild_thenSnapshotDoesNotOverwriteTheChange() {
+        //mock
+        searchIndex.put(1L, "Buy milk");
+        searchIndex.put(2L, "Drink milk");
+        //the snapshot still holds the old rows, the changes are committed while it is read
+        when(toDoRepository.streamAll()).thenReturn(Stream.of(1L, 2L).map(id -> {
+            if (id == 1L) {
+                searchIndex.onChange(ToDoChangedEvent.updated(List.of(new ToDoResponse(1L, "Buy bread", null, 2))));
+                searchIndex.onChange(ToDoChangedEvent.deleted(2L));
+                //searches keep using the current index until the rebuilt one is complete
+                assertEquals(List.of(1L), searchIndex.search("bread"));
+                return new ToDoEntity(1L, "Buy milk");
+            }
+            return new ToDoEntity(2L, "Drink milk");
+        }));
+
+        //call
+        searchIndex.rebuild();
+
+        //validate
+        assertEquals(List.of(), searchIndex.search("milk"));
+        assertEquals(List.of(1L), searchIndex.search("bread"));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo.seed;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = {
+        "todo.seed.completed-ratio=0.3",
+        "todo.seed.text-length.min=5",
+        "todo.seed.text-length.max=40",
+        "todo.seed.text-length.distribution=skewed",
+        "todo.seed.batch-size=1000"
+})
+@ActiveProfiles(profiles = "test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ToDoSeederTest {
+
+    @Autowired
+    ToDoSeeder seeder;
+
+    @Autowired
+    ToDoRepository toDoRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        toDoRepository.deleteAll();
+    }
+
+    @Test
+    void whenSeed_thenInsertRowsWithConfiguredShape() {
+        //call
+        long seeded = seeder.seed(20_000);
+
+        //validate
+        assertEquals(20_000, seeded);
+        Map<String, Object> stats = jdbcTemplate.queryForMap("select count(*) as total, count(completed_at) as completed, " +
+                "min(length(text)) as shortest, max(length(text)) as longest, avg(length(text)) as average, " +
+                "count(distinct id) as ids from to_do_entity");
+        assertEquals(20_000L, ((Number) stats.get("total")).longValue());
+        assertEquals(20_000L, ((Number) stats.get("ids")).longValue());
+        assertEquals(0.3, ((Number) stats.get("completed")).doubleValue() / 20_000, 0.02);
+        assertTrue(((Number) stats.get("shortest")).intValue() >= 1);
+        assertTrue(((Number) stats.get("longest")).intValue() <= 40);
+        //skewed towards short texts, a quarter of the way from min to max on average
+        assertTrue(((Number) stats.get("average")).doubleValue() < 20);
+    }
+
+    @Test
+    void whenSaveAfterSeed_thenGenerateUnusedId() {
+        //mock
+        seeder.seed(1_000);
+
+        //call
+        var saved = toDoRepository.saveAndFlush(new ToDoEntity("Saved after seeding"));
+        var savedToo = toDoRepository.saveAndFlush(new ToDoEntity("Saved after seeding too"));
+
+        //validate
+        assertEquals(1_002, toDoRepository.count());
+        assertNotEquals(saved.getId(), savedToo.getId());
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.demo.service;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoArchiveRepository;
+import com.example.demo.repository.ToDoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = {
+        "todo.archive.enabled=true",
+        "todo.archive.after-days=30",
+        "todo.archive.interval-ms=3600000",
+        "todo.archive.chunk-size=2",
+        "todo.archive.chunk-pause-ms=0"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles(profiles = "test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ToDoArchiverTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    ToDoService toDoService;
+
+    @Autowired
+    ToDoArchiver archiver;
+
+    @Autowired
+    ToDoRepository toDoRepository;
+
+    @Autowired
+    ToDoArchiveRepository archiveRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final List<Long> oldIds = new ArrayList<>();
+
+    private Long recentId;
+
+    private Long inProgressId;
+
+    @BeforeEach
+    void setUp() {
+        toDoRepository.deleteAll();
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        for (int i = 0; i < 5; i++) {
+            oldIds.add(toDoRepository.save(new ToDoEntity(null, "Old " + i, now.minusDays(31 + i))).getId());
+        }
+        recentId = toDoRepository.save(new ToDoEntity(null, "Recent", now.minusDays(1))).getId();
+        inProgressId = toDoRepository.save(new ToDoEntity("In progress")).getId();
+    }
+
+    @Test
+    void whenArchive_thenMoveOnlyOldCompletedTodosInChunks() throws Exception {
+        //mock
+        ToDoResponse cached = toDoService.getOne(oldIds.get(0));
+
+        //call
+        int archived = archiver.archive();
+
+        //validate
+        assertEquals(5, archived);
+        assertEquals(List.of(recentId, inProgressId), ids(toDoService.getAll()));
+        assertEquals(5, archiveRepository.count());
+        assertEquals(5.0, meterRegistry.counter("todo.archive.archived").count());
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.getOne(oldIds.get(0)));
+        ToDoResponse archivedTodo = toDoService.getOneIncludingArchived(oldIds.get(0));
+        assertEquals(cached.text, archivedTodo.text);
+        assertEquals(cached.version, archivedTodo.version);
+        assertEquals(cached.completedAt.toInstant(), archivedTodo.completedAt.toInstant());
+        assertEquals(0, archiver.archive());
+    }
+
+    @Test
+    void whenGetIncludingArchived_thenReturnHotAndArchivedTodos() throws Exception {
+        //mock
+        archiver.archive();
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+
+        //call
+        List<ToDoResponse> all = toDoService.getAllIncludingArchived(false, null, null);
+        List<ToDoResponse> completed = toDoService.getAllIncludingArchived(true, null, null);
+        List<ToDoResponse> inRange = toDoService.getAllIncludingArchived(true, now.minusDays(33), now.minusDays(2));
+
+        //validate
+        List<Long> expected = new ArrayList<>(oldIds);
+        expected.add(recentId);
+        expected.add(inProgressId);
+        assertEquals(expected, ids(all));
+        assertEquals(expected.subList(0, 6), ids(completed));
+        assertEquals(oldIds.subList(0, 2), ids(inRange));
+    }
+
+    @Test
+    void whenGetWithIncludeArchived_thenReturnArchivedTodos() throws Exception {
+        // given
+        archiver.archive();
+
+        // when
+        // then
+        perform(get("/todos"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+        perform(get("/todos?includeArchived=true&isCompleted=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(6)))
+                .andExpect(jsonPath("$[0].text").value("Old 0"));
+        perform(get("/todos/" + oldIds.get(0)))
+                .andExpect(status().isNotFound());
+        perform(get("/todos/" + oldIds.get(0) + "?includeArchived=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.text").value("Old 0"));
+    }
+
+    @Test
+    void whenDeleteArchivedTodo_thenRemoveItFromArchive() throws Exception {
+        //mock
+        archiver.archive();
+
+        //call
+        toDoService.deleteOne(oldIds.get(0));
+
+        //validate
+        assertEquals(4, archiveRepository.count());
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.getOneIncludingArchived(oldIds.get(0)));
+    }
+
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        var actions = mockMvc.perform(request);
+        MvcResult result = actions.andReturn();
+        if (!result.getRequest().isAsyncStarted()) {
+            return actions;
+        }
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    private static List<Long> ids(List<ToDoResponse> todos) {
+        return todos.stream().map(todo -> todo.id).collect(Collectors.toList());
+    }
+}
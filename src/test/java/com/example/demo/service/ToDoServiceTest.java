@@ -1,20 +1,31 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ToDoResponse;
 import com.example.demo.dto.ToDoSaveRequest;
 import com.example.demo.dto.mapper.ToDoEntityToResponseMapper;
+import com.example.demo.exception.ToDoConflictException;
 import com.example.demo.exception.ToDoNotFoundException;
 import com.example.demo.model.ToDoEntity;
+import com.example.demo.event.ToDoChangedEvent;
+import com.example.demo.repository.ToDoArchiveRepository;
 import com.example.demo.repository.ToDoRepository;
+import com.example.demo.search.ToDoSearchIndex;
+import com.example.demo.sharding.ToDoShards;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
@@ -26,13 +37,23 @@ class ToDoServiceTest {
 
     private ToDoRepository toDoRepository;
 
+    private ToDoArchiveRepository archiveRepository;
+
+    private ToDoSearchIndex searchIndex;
+
+    private ApplicationEventPublisher eventPublisher;
+
     private ToDoService toDoService;
 
     //executes before each test defined below
     @BeforeEach
     void setUp() {
         this.toDoRepository = mock(ToDoRepository.class);
-        toDoService = new ToDoService(toDoRepository);
+        this.archiveRepository = mock(ToDoArchiveRepository.class);
+        this.searchIndex = mock(ToDoSearchIndex.class);
+        this.eventPublisher = mock(ApplicationEventPublisher.class);
+        toDoService = new ToDoService(toDoRepository, archiveRepository, searchIndex, eventPublisher,
+                new ToDoShards(List.of(), null), new ConcurrentMapCacheManager(), null);
     }
 
     @Test
@@ -43,7 +64,9 @@ class ToDoServiceTest {
         var toDo = new ToDoEntity(1L, "Test 2");
         toDo.completeNow();
         testToDos.add(toDo);
-        when(toDoRepository.findAll()).thenReturn(testToDos);
+        when(toDoRepository.findAllResponses(any())).thenReturn(testToDos.stream()
+                .map(ToDoEntityToResponseMapper::map)
+                .collect(Collectors.toList()));
 
         //call
         var todos = toDoService.getAll();
@@ -68,10 +91,11 @@ class ToDoServiceTest {
         toDo2.completeNow();
         var completedTodos = List.of(toDo1, toDo2);
         testToDos = new ArrayList<>(completedTodos);
-        when(toDoRepository.findAll(where(any())))
+        when(toDoRepository.findAllResponses(where(any())))
                 .thenReturn(testToDos
                         .stream()
                         .filter(todo -> todo.getCompletedAt() != null)
+                        .map(ToDoEntityToResponseMapper::map)
                         .collect(Collectors.toList()));
 
         //call
@@ -95,10 +119,11 @@ class ToDoServiceTest {
         var toDo2 = new ToDoEntity(2L, "Test 3");
         var inProgressTodos = List.of(toDo1, toDo2);
         testToDos = new ArrayList<>(inProgressTodos);
-        when(toDoRepository.findAll(where(any())))
+        when(toDoRepository.findAllResponses(where(any())))
                 .thenReturn(testToDos
                         .stream()
                         .filter(todo -> todo.getCompletedAt() == null)
+                        .map(ToDoEntityToResponseMapper::map)
                         .collect(Collectors.toList()));
 
         //call
@@ -113,6 +138,70 @@ class ToDoServiceTest {
         }
     }
 
+    @Test
+    void whenGetPage_thenReturnLimitItemsAndNextCursor() {
+        //mock
+        var testToDos = List.of(
+                new ToDoEntity(1L, "Test 1"),
+                new ToDoEntity(2L, "Test 2"),
+                new ToDoEntity(3L, "Test 3")
+        );
+        when(toDoRepository.findAllResponsesOrderedById(any(), eq(3))).thenReturn(testToDos.stream()
+                .map(ToDoEntityToResponseMapper::map)
+                .collect(Collectors.toList()));
+
+        //call
+        var page = toDoService.getPage(null, 2);
+
+        //validate
+        assertEquals(2, page.items.size());
+        assertEquals(testToDos.get(1).getId(), page.nextCursor);
+        for (int i = 0; i < page.items.size(); i++) {
+            assertThat(page.items.get(i), samePropertyValuesAs(
+                    ToDoEntityToResponseMapper.map(testToDos.get(i))
+            ));
+        }
+    }
+
+    @Test
+    void whenGetLastPage_thenReturnNoNextCursor() {
+        //mock
+        var testToDos = List.of(new ToDoEntity(3L, "Test 3"));
+        when(toDoRepository.findAllResponsesOrderedById(any(), eq(3))).thenReturn(testToDos.stream()
+                .map(ToDoEntityToResponseMapper::map)
+                .collect(Collectors.toList()));
+
+        //call
+        var page = toDoService.getPageInProgress(2L, 2);
+
+        //validate
+        assertEquals(1, page.items.size());
+        assertNull(page.nextCursor);
+    }
+
+    @Test
+    void whenExportAll_thenPassEveryToDoAndDetachIt() {
+        //mock
+        var testToDos = List.of(
+                new ToDoEntity(0L, "Test 1"),
+                new ToDoEntity(1L, "Test 2").completeNow()
+        );
+        when(toDoRepository.streamAll()).thenReturn(testToDos.stream());
+
+        //call
+        var todos = new ArrayList<ToDoResponse>();
+        toDoService.exportAll(todos::add);
+
+        //validate
+        assertEquals(todos.size(), testToDos.size());
+        for (int i = 0; i < todos.size(); i++) {
+            assertThat(todos.get(i), samePropertyValuesAs(
+                    ToDoEntityToResponseMapper.map(testToDos.get(i))
+            ));
+            verify(toDoRepository, times(1)).detach(testToDos.get(i));
+        }
+    }
+
     @Test
     void whenUpsertWithId_thenReturnUpdated() throws ToDoNotFoundException {
         //mock
@@ -125,7 +214,7 @@ class ToDoServiceTest {
                 return Optional.empty();
             }
         });
-        when(toDoRepository.save(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
+        when(toDoRepository.saveAndFlush(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
             ToDoEntity arg = i.getArgument(0, ToDoEntity.class);
             Long id = arg.getId();
             if (id != null) {
@@ -161,7 +250,7 @@ class ToDoServiceTest {
                 return Optional.of(new ToDoEntity(newId, "Wrong ToDo"));
             }
         });
-        when(toDoRepository.save(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
+        when(toDoRepository.saveAndFlush(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
             ToDoEntity arg = i.getArgument(0, ToDoEntity.class);
             Long id = arg.getId();
             if (id == null)
@@ -181,20 +270,51 @@ class ToDoServiceTest {
     }
 
     @Test
-    void whenComplete_thenReturnWithCompletedAt() throws ToDoNotFoundException {
+    void whenUpsertAll_thenLoadExistingOnceAndSaveAll() {
+        //mock
+        var existingToDo = new ToDoEntity(0L, "Old Item");
+        when(toDoRepository.findAllById(anySet())).thenReturn(List.of(existingToDo));
+        when(toDoRepository.saveAll(anyList())).thenAnswer(i -> {
+            List<ToDoEntity> arg = i.getArgument(0);
+            var saved = new ArrayList<ToDoEntity>();
+            for (int j = 0; j < arg.size(); j++) {
+                ToDoEntity todo = arg.get(j);
+                saved.add(todo.getId() != null ? todo : new ToDoEntity(100L + j, todo.getText()));
+            }
+            return saved;
+        });
+
+        //call
+        var updateRequest = new ToDoSaveRequest();
+        updateRequest.id = existingToDo.getId();
+        updateRequest.text = "Updated Item";
+        var createRequest = new ToDoSaveRequest();
+        createRequest.text = "Created Item";
+        var todos = toDoService.upsertAll(List.of(updateRequest, createRequest));
+
+        //validate
+        assertEquals(2, todos.size());
+        assertEquals(updateRequest.id, todos.get(0).id);
+        assertEquals(updateRequest.text, todos.get(0).text);
+        assertEquals(101L, todos.get(1).id);
+        assertEquals(createRequest.text, todos.get(1).text);
+        verify(toDoRepository, times(1)).findAllById(Set.of(existingToDo.getId()));
+        verify(toDoRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void whenComplete_thenReturnWithCompletedAt() throws ToDoNotFoundException, ToDoConflictException {
         var startTime = ZonedDateTime.now(ZoneOffset.UTC);
         //mock
         var todo = new ToDoEntity(0L, "Test 1");
-        when(toDoRepository.findById(anyLong())).thenReturn(Optional.of(todo));
-        when(toDoRepository.save(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
-            ToDoEntity arg = i.getArgument(0, ToDoEntity.class);
-            Long id = arg.getId();
-            if (id.equals(todo.getId())) {
-                return todo;
-            } else {
-                return new ToDoEntity();
-            }
+        var completedAt = new ZonedDateTime[1];
+        when(toDoRepository.completeById(eq(todo.getId()), any(), anyLong())).thenAnswer(i -> {
+            completedAt[0] = i.getArgument(1, ZonedDateTime.class);
+            return 1;
         });
+        when(toDoRepository.findResponseById(anyLong())).thenAnswer(i -> Optional.of(
+                ToDoEntityToResponseMapper.map(new ToDoEntity(todo.getId(), todo.getText(), completedAt[0]))
+        ));
 
         //call
         var result = toDoService.completeToDo(todo.getId());
@@ -203,23 +323,32 @@ class ToDoServiceTest {
         assertEquals(result.id, todo.getId());
         assertEquals(result.text, todo.getText());
         assertTrue(result.completedAt.isAfter(startTime));
+        verify(toDoRepository, never()).saveAndFlush(ArgumentMatchers.any(ToDoEntity.class));
     }
 
     @Test
-    void whenCancel_thenReturnWithEmptyCompletedAt() throws ToDoNotFoundException {
-        var startTime = ZonedDateTime.now(ZoneOffset.UTC);
+    void whenCompleteByIdThatDoesntExist_thenThrowToDoNotFoundException() {
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.completeToDo(1L));
+    }
+
+    @Test
+    void whenCompleteAlreadyCompleted_thenThrowToDoConflictException() {
         //mock
-        var todo = new ToDoEntity(0L, "Test 1", ZonedDateTime.now(ZoneOffset.UTC));
-        when(toDoRepository.findById(anyLong())).thenReturn(Optional.of(todo));
-        when(toDoRepository.save(ArgumentMatchers.any(ToDoEntity.class))).thenAnswer(i -> {
-            ToDoEntity arg = i.getArgument(0, ToDoEntity.class);
-            Long id = arg.getId();
-            if (id.equals(todo.getId())) {
-                return todo;
-            } else {
-                return new ToDoEntity();
-            }
-        });
+        when(toDoRepository.completeById(eq(1L), any(), anyLong())).thenReturn(0);
+        when(toDoRepository.existsById(1L)).thenReturn(true);
+
+        //call
+        //validate
+        assertThrows(ToDoConflictException.class, () -> toDoService.completeToDo(1L));
+        verify(toDoRepository, never()).findResponseById(anyLong());
+    }
+
+    @Test
+    void whenCancel_thenReturnWithEmptyCompletedAt() throws ToDoNotFoundException, ToDoConflictException {
+        //mock
+        var todo = new ToDoEntity(0L, "Test 1");
+        when(toDoRepository.cancelById(eq(todo.getId()), anyLong())).thenReturn(1);
+        when(toDoRepository.findResponseById(anyLong())).thenReturn(Optional.of(ToDoEntityToResponseMapper.map(todo)));
 
         //call
         var result = toDoService.cancelToDo(todo.getId());
@@ -228,6 +357,35 @@ class ToDoServiceTest {
         assertEquals(result.id, todo.getId());
         assertEquals(result.text, todo.getText());
         assertNull(result.completedAt);
+        verify(toDoRepository, never()).saveAndFlush(ArgumentMatchers.any(ToDoEntity.class));
+    }
+
+    @Test
+    void whenCompleteAll_thenUpdateInChunks() {
+        //mock
+        var ids = LongStream.range(0, ToDoService.MAX_IN_CLAUSE_SIZE + 1).boxed().collect(Collectors.toList());
+        when(toDoRepository.completeAllById(anyCollection(), any(), anyLong())).thenAnswer(i ->
+                i.getArgument(0, Collection.class).size()
+        );
+
+        //call
+        var affected = toDoService.completeAll(ids);
+
+        //validate
+        assertEquals(ids.size(), affected);
+        verify(toDoRepository, times(2)).completeAllById(anyCollection(), any(), anyLong());
+    }
+
+    @Test
+    void whenCancelAllCompleted_thenReturnAffectedCount() {
+        //mock
+        when(toDoRepository.cancelAllCompleted(anyLong())).thenReturn(3);
+
+        //call
+        var affected = toDoService.cancelAllCompleted();
+
+        //validate
+        assertEquals(3, affected);
     }
 
     @Test
@@ -239,7 +397,7 @@ class ToDoServiceTest {
     void whenGetOne_thenReturnCorrectOne() throws ToDoNotFoundException {
         //mock
         var todo = new ToDoEntity(0L, "Test 1");
-        when(toDoRepository.findById(anyLong())).thenReturn(Optional.of(todo));
+        when(toDoRepository.findResponseById(anyLong())).thenReturn(Optional.of(ToDoEntityToResponseMapper.map(todo)));
 
         //call
         var result = toDoService.getOne(0L);
@@ -250,6 +408,37 @@ class ToDoServiceTest {
         ));
     }
 
+    @Test
+    void whenGetOneTwice_thenLoadOnce() throws ToDoNotFoundException {
+        //mock
+        var todo = new ToDoEntity(0L, "Test 1");
+        when(toDoRepository.findResponseById(anyLong())).thenReturn(Optional.of(ToDoEntityToResponseMapper.map(todo)));
+
+        //call
+        toDoService.getOne(0L);
+        toDoService.getOne(0L);
+
+        //validate
+        verify(toDoRepository, times(1)).findResponseById(0L);
+    }
+
+    @Test
+    void whenChangeCommittedWhileLoading_thenDoNotCacheTheLoadedTodo() throws ToDoNotFoundException {
+        //mock
+        var todo = new ToDoEntity(0L, "Test 1");
+        when(toDoRepository.findResponseById(anyLong())).thenAnswer(i -> {
+            toDoService.onChanged(ToDoChangedEvent.deleted(0L));
+            return Optional.of(ToDoEntityToResponseMapper.map(todo));
+        });
+
+        //call
+        toDoService.getOne(0L);
+        toDoService.getOne(0L);
+
+        //validate
+        verify(toDoRepository, times(2)).findResponseById(0L);
+    }
+
     @Test
     void whenDeleteOne_thenRepositoryDeleteCalled() {
         //call
@@ -257,7 +446,9 @@ class ToDoServiceTest {
         toDoService.deleteOne(id);
 
         //validate
-        verify(toDoRepository, times(1)).deleteById(id);
+        verify(toDoRepository, times(1)).deleteOneById(id);
+        verify(archiveRepository, times(1)).deleteOneById(id);
+        verify(toDoRepository, never()).findById(anyLong());
     }
 
     @Test
@@ -266,12 +457,136 @@ class ToDoServiceTest {
     }
 
     @Test
-    void whenDeleteAll_thenRepositoryDeleteAllCalled() {
+    void whenGetOneIncludingArchivedOfArchivedId_thenReturnArchivedTodo() throws ToDoNotFoundException {
+        //mock
+        var archived = new ToDoResponse(1L, "Archived", ZonedDateTime.now(ZoneOffset.UTC), 3);
+        when(toDoRepository.findResponseById(1L)).thenReturn(Optional.empty());
+        when(archiveRepository.findResponseById(1L)).thenReturn(Optional.of(archived));
+
+        //call
+        var result = toDoService.getOneIncludingArchived(1L);
+
+        //validate
+        assertSame(archived, result);
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.getOneIncludingArchived(2L));
+    }
+
+    @Test
+    void whenDeleteAll_thenRepositoryDeleteAllInBatchCalled() {
         //call
         toDoService.deleteAll();
 
         //validate
-        verify(toDoRepository, times(1)).deleteAll();
+        verify(toDoRepository, times(1)).deleteAllInBatch();
+        verify(toDoRepository, never()).deleteAll();
+    }
+
+    @Test
+    void whenGetVersionOfUnknownId_thenThrowNotFoundException() {
+        //mock
+        when(toDoRepository.findVersionById(anyLong())).thenReturn(Optional.empty());
+
+        //call
+        //validate
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.getVersion(1L));
+    }
+
+    @Test
+    void whenSearch_thenReturnFoundInRankOrder() {
+        //mock
+        when(searchIndex.search("text")).thenReturn(List.of(3L, 1L, 2L));
+        when(toDoRepository.findAllResponses(any())).thenReturn(List.of(
+                ToDoEntityToResponseMapper.map(new ToDoEntity(1L, "text")),
+                ToDoEntityToResponseMapper.map(new ToDoEntity(3L, "text text"))
+        ));
+
+        //call
+        var todos = toDoService.search("text");
+
+        //validate
+        assertEquals(2, todos.size());
+        assertEquals(3L, todos.get(0).id);
+        assertEquals(1L, todos.get(1).id);
+        verify(toDoRepository, times(1)).findAllResponses(any());
+    }
+
+    @Test
+    void whenDeleteOne_thenPublishDeletedEvent() {
+        //call
+        toDoService.deleteOne(1L);
+
+        //validate
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof ToDoChangedEvent
+                        && ((ToDoChangedEvent) event).getType() == ToDoChangedEvent.Type.DELETED
+                        && ((ToDoChangedEvent) event).getId() == 1L
+        ));
+    }
+
+    @Test
+    void whenUpsertAll_thenPublishCreatedAndUpdatedEvents() {
+        //mock
+        var existingToDo = new ToDoEntity(0L, "Old Item");
+        when(toDoRepository.findAllById(anySet())).thenReturn(List.of(existingToDo));
+        when(toDoRepository.saveAll(anyList())).thenAnswer(i -> {
+            List<ToDoEntity> arg = i.getArgument(0);
+            return List.of(arg.get(0), new ToDoEntity(100L, arg.get(1).getText()));
+        });
+
+        //call
+        var updateRequest = new ToDoSaveRequest();
+        updateRequest.id = existingToDo.getId();
+        updateRequest.text = "Updated Item";
+        var createRequest = new ToDoSaveRequest();
+        createRequest.text = "Created Item";
+        toDoService.upsertAll(List.of(updateRequest, createRequest));
+
+        //validate
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof ToDoChangedEvent
+                        && ((ToDoChangedEvent) event).getType() == ToDoChangedEvent.Type.UPDATED
+                        && ((ToDoChangedEvent) event).getTodos().get(0).id == 0L
+        ));
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof ToDoChangedEvent
+                        && ((ToDoChangedEvent) event).getType() == ToDoChangedEvent.Type.CREATED
+                        && ((ToDoChangedEvent) event).getTodos().get(0).id == 100L
+        ));
+    }
+
+    @Test
+    void whenUpsertWithIdAndNativeUpsert_thenUseItInsteadOfLoadAndSave() {
+        //mock
+        when(toDoRepository.upsertById(5L, "Updated Item"))
+                .thenReturn(Optional.of(new ToDoResponse(5L, "Updated Item", null, 3L)));
+        when(toDoRepository.upsertById(6L, "Created Item"))
+                .thenReturn(Optional.of(new ToDoResponse(150L, "Created Item", null, 0L)));
+
+        //call
+        var updateRequest = new ToDoSaveRequest();
+        updateRequest.id = 5L;
+        updateRequest.text = "Updated Item";
+        var updated = toDoService.upsert(updateRequest);
+        var createRequest = new ToDoSaveRequest();
+        createRequest.id = 6L;
+        createRequest.text = "Created Item";
+        var created = toDoService.upsert(createRequest);
+
+        //validate
+        assertEquals(3L, (long) updated.version);
+        assertEquals(150L, (long) created.id);
+        verify(toDoRepository, never()).findById(anyLong());
+        verify(toDoRepository, never()).saveAndFlush(ArgumentMatchers.any(ToDoEntity.class));
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof ToDoChangedEvent
+                        && ((ToDoChangedEvent) event).getType() == ToDoChangedEvent.Type.UPDATED
+                        && ((ToDoChangedEvent) event).getTodos().get(0).id == 5L
+        ));
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) ->
+                event instanceof ToDoChangedEvent
+                        && ((ToDoChangedEvent) event).getType() == ToDoChangedEvent.Type.CREATED
+                        && ((ToDoChangedEvent) event).getTodos().get(0).id == 150L
+        ));
     }
 
 }
@@ -0,0 +1,223 @@
+package com.example.demo.service;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.repository.ToDoArchiveRepository;
+import com.example.demo.repository.ToDoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.example.demo.controller.AsyncMockMvc.perform;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = {
+        "todo.write-behind.enabled=true",
+        "todo.write-behind.flush-interval-ms=3600000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles(profiles = "test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ToDoWriteBehindBufferTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    ToDoService toDoService;
+
+    @Autowired
+    ToDoWriteBehindBuffer writeBehindBuffer;
+
+    @Autowired
+    ToDoRepository toDoRepository;
+
+    @Autowired
+    ToDoArchiveRepository archiveRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private Long id;
+
+    @BeforeEach
+    void setUp() {
+        toDoRepository.deleteAll();
+        id = toDoRepository.save(new ToDoEntity("Initial text")).getId();
+    }
+
+    @Test
+    void whenUpsertSameIdManyTimes_thenWriteOnlyTheLastText() throws ToDoNotFoundException {
+        //call
+        for (int i = 1; i <= 100; i++) {
+            toDoService.upsert(saveRequest("Text " + i));
+        }
+
+        //validate
+        assertEquals("Initial text", toDoRepository.findById(id).orElseThrow().getText());
+        assertEquals("Text 100", toDoService.getOne(id).text);
+        assertEquals("Text 100", toDoService.getAll().get(0).text);
+        long versionBeforeFlush = toDoService.getVersion(id);
+
+        assertEquals(1, writeBehindBuffer.flush());
+        var todo = toDoRepository.findById(id).orElseThrow();
+        assertEquals("Text 100", todo.getText());
+        assertEquals(versionBeforeFlush, todo.getVersion());
+        assertEquals(100.0, meterRegistry.counter("todo.write-behind.buffered").count());
+        assertEquals(1.0, meterRegistry.counter("todo.write-behind.flushed").count());
+    }
+
+    @Test
+    void whenUpsertAgainBeforeFlush_thenVersionsChangeEveryTime() throws ToDoNotFoundException {
+        //call
+        toDoService.upsert(saveRequest("First text"));
+        long firstVersion = toDoService.getVersion(id);
+        long firstListVersion = toDoService.getListVersion().maxVersion;
+        toDoService.upsert(saveRequest("Second text"));
+
+        //validate
+        assertTrue(toDoService.getVersion(id) > firstVersion);
+        assertTrue(toDoService.getListVersion().maxVersion > firstListVersion);
+        assertEquals(toDoService.getVersion(id), toDoService.getOne(id).version);
+    }
+
+    @Test
+    void whenDatabaseRefusesBufferedText_thenDropOnlyThatOne() {
+        //mock
+        Long otherId = toDoRepository.save(new ToDoEntity("Other text")).getId();
+
+        //call
+        writeBehindBuffer.put(id, "x".repeat(ToDoEntity.MAX_TEXT_LENGTH + 1));
+        writeBehindBuffer.put(otherId, "Changed text");
+
+        //validate
+        assertEquals(1, writeBehindBuffer.flush());
+        assertEquals(0, writeBehindBuffer.flush());
+        assertEquals("Initial text", toDoRepository.findById(id).orElseThrow().getText());
+        assertEquals("Changed text", toDoRepository.findById(otherId).orElseThrow().getText());
+        assertEquals(1.0, meterRegistry.counter("todo.write-behind.dropped").count());
+    }
+
+    @Test
+    void whenUpsertTextTooLong_thenFailRightAwayInsteadOfBuffering() {
+        //call
+        assertThrows(DataIntegrityViolationException.class,
+                () -> toDoService.upsert(saveRequest("x".repeat(ToDoEntity.MAX_TEXT_LENGTH + 1))));
+
+        //validate
+        assertFalse(writeBehindBuffer.contains(id));
+    }
+
+    @Test
+    void whenArchivedAfterBuffering_thenWriteTheTextToTheArchivedCopy() throws ToDoNotFoundException {
+        //mock
+        toDoService.upsert(saveRequest("Changed text"));
+        long version = toDoService.getVersion(id);
+        jdbcTemplate.update("insert into to_do_archive (id, text, completed_at, version, archived_at) " +
+                "select id, text, current_timestamp, version, current_timestamp from to_do_entity where id = ?", id);
+        jdbcTemplate.update("delete from to_do_entity where id = ?", id);
+
+        //call
+        assertEquals(1, writeBehindBuffer.flush());
+
+        //validate
+        var archived = archiveRepository.findById(id).orElseThrow();
+        assertEquals("Changed text", archived.getText());
+        assertEquals(version, archived.getVersion());
+    }
+
+    @Test
+    void whenCompletedAfterBuffering_thenETagChangesAndFlushKeepsTheVersion() throws Exception {
+        //mock
+        toDoService.upsert(saveRequest("Changed text"));
+        String bufferedETag = perform(mockMvc, get("/todos/" + id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        //call
+        perform(mockMvc, put("/todos/" + id + "/complete")).andExpect(status().isOk());
+
+        //validate
+        String completedETag = perform(mockMvc, get("/todos/" + id).header(HttpHeaders.IF_NONE_MATCH, bufferedETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.text").value("Changed text"))
+                .andExpect(jsonPath("$.completedAt").exists())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(bufferedETag, completedETag);
+        long version = toDoService.getVersion(id);
+
+        //call
+        assertEquals(1, writeBehindBuffer.flush());
+
+        //validate
+        var todo = toDoRepository.findById(id).orElseThrow();
+        assertEquals("Changed text", todo.getText());
+        assertNotNull(todo.getCompletedAt());
+        assertEquals(version, todo.getVersion());
+        perform(mockMvc, get("/todos/" + id).header(HttpHeaders.IF_NONE_MATCH, completedETag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void whenCancelledInBulkAfterBuffering_thenVersionMovesPastTheBufferedOne() throws Exception {
+        //mock
+        toDoService.upsert(saveRequest("Changed text"));
+        toDoService.completeToDo(id);
+        long completedVersion = toDoService.getVersion(id);
+
+        //call
+        assertEquals(1, toDoService.cancelAllCompleted());
+
+        //validate
+        long cancelledVersion = toDoService.getVersion(id);
+        assertTrue(cancelledVersion > completedVersion);
+        assertEquals(cancelledVersion, toDoService.getOne(id).version);
+        assertEquals(1, writeBehindBuffer.flush());
+        assertEquals(cancelledVersion, toDoRepository.findById(id).orElseThrow().getVersion());
+    }
+
+    @Test
+    void whenDeletedBeforeFlush_thenBufferedTextIsDropped() {
+        //call
+        toDoService.upsert(saveRequest("Changed text"));
+        toDoService.deleteOne(id);
+
+        //validate
+        assertEquals(0, writeBehindBuffer.flush());
+    }
+
+    @Test
+    void whenShutdown_thenFlushEverything() throws InterruptedException {
+        //call
+        toDoService.upsert(saveRequest("Changed text"));
+        writeBehindBuffer.shutdown();
+
+        //validate
+        assertEquals("Changed text", toDoRepository.findById(id).orElseThrow().getText());
+    }
+
+    private ToDoSaveRequest saveRequest(String text) {
+        var request = new ToDoSaveRequest();
+        request.id = id;
+        request.text = text;
+        return request;
+    }
+}
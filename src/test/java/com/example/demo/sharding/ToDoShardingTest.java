@@ -0,0 +1,189 @@
+package com.example.demo.sharding;
+
+import com.example.demo.config.DemoApplicationTestConfig;
+import com.example.demo.dto.ToDoCompletionBucket;
+import com.example.demo.dto.ToDoResponse;
+import com.example.demo.dto.ToDoSaveRequest;
+import com.example.demo.exception.ToDoConflictException;
+import com.example.demo.exception.ToDoNotFoundException;
+import com.example.demo.exception.ToDoPartiallySavedException;
+import com.example.demo.model.ToDoEntity;
+import com.example.demo.seed.ToDoSeeder;
+import com.example.demo.service.ToDoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = DemoApplicationTestConfig.class, properties = {
+        "todo.sharding.urls=jdbc:h2:mem:sharding-test-0,jdbc:h2:mem:sharding-test-1,jdbc:h2:mem:sharding-test-2"
+})
+@ActiveProfiles(profiles = {"test", "sharding"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ToDoShardingTest {
+
+    @Autowired
+    ToDoService toDoService;
+
+    @Autowired
+    ToDoShards shards;
+
+    @Autowired
+    ToDoSeeder seeder;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Test
+    void whenUpsertMany_thenSpreadThemOverAllShards() throws SQLException {
+        //call
+        List<ToDoResponse> saved = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            saved.add(toDoService.upsert(saveRequest(null, "Todo " + i)));
+        }
+
+        //validate
+        for (ToDoResponse todo : saved) {
+            assertEquals(1, countOnShard(shards.shardOf(todo.id), todo.id));
+        }
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(10, countOnShard(shard, null));
+        }
+        List<Long> ids = toDoService.getAll().stream().map(todo -> todo.id).collect(Collectors.toList());
+        assertEquals(saved.stream().map(todo -> todo.id).sorted().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void whenUpsertAll_thenReturnTodosInOrderOfRequests() {
+        //call
+        List<ToDoResponse> saved = toDoService.upsertAll(IntStream.range(0, 20)
+                .mapToObj(i -> saveRequest(null, "Todo " + i))
+                .collect(Collectors.toList()));
+        List<ToDoSaveRequest> updates = new ArrayList<>();
+        for (int i = saved.size() - 1; i >= 0; i--) {
+            updates.add(saveRequest(saved.get(i).id, "Updated " + i));
+        }
+        updates.add(saveRequest(null, "New todo"));
+        List<ToDoResponse> updated = toDoService.upsertAll(updates);
+
+        //validate
+        assertEquals(21, updated.size());
+        for (int i = 0; i < updates.size() - 1; i++) {
+            assertEquals(updates.get(i).id, updated.get(i).id);
+            assertEquals(updates.get(i).text, updated.get(i).text);
+        }
+        assertEquals("New todo", updated.get(20).text);
+        assertEquals(21, toDoService.getAll().size());
+    }
+
+    @Test
+    void whenUpsertAllFailsOnOneShard_thenReportTheTodosTheOthersSaved() throws ToDoNotFoundException {
+        //mock
+        List<ToDoResponse> existing = toDoService.upsertAll(IntStream.range(0, 3)
+                .mapToObj(i -> saveRequest(null, "Todo " + i))
+                .collect(Collectors.toList()));
+        ToDoResponse other = toDoService.upsert(saveRequest(null, "On another shard"));
+        assertNotEquals(shards.shardOf(existing.get(0).id), shards.shardOf(other.id));
+
+        //call
+        var e = assertThrows(ToDoPartiallySavedException.class, () -> toDoService.upsertAll(List.of(
+                saveRequest(existing.get(0).id, "x".repeat(ToDoEntity.MAX_TEXT_LENGTH + 1)),
+                saveRequest(other.id, "Updated")
+        )));
+
+        //validate
+        assertNull(e.getSaved().get(0));
+        assertEquals("Updated", e.getSaved().get(1).text);
+        assertEquals("Todo 0", toDoService.getOne(existing.get(0).id).text);
+        assertEquals("Updated", toDoService.getOne(other.id).text);
+    }
+
+    @Test
+    void whenPage_thenMergeShardsInIdOrder() {
+        //mock
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ids.add(toDoService.upsert(saveRequest(null, "Todo " + i)).id);
+        }
+        ids.sort(null);
+
+        //call
+        var first = toDoService.getPage(null, 5);
+        var second = toDoService.getPage(first.nextCursor, 5);
+
+        //validate
+        assertEquals(ids.subList(0, 5), first.items.stream().map(todo -> todo.id).collect(Collectors.toList()));
+        assertEquals(ids.subList(5, 10), second.items.stream().map(todo -> todo.id).collect(Collectors.toList()));
+    }
+
+    @Test
+    void whenCompleteAndDeleteAcrossShards_thenAffectEveryShard()
+            throws ToDoNotFoundException, ToDoConflictException, SQLException {
+        //mock
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            ids.add(toDoService.upsert(saveRequest(null, "Todo " + i)).id);
+        }
+
+        //call
+        var completed = toDoService.completeToDo(ids.get(0));
+        int bulkCompleted = toDoService.completeAll(ids.subList(0, 6));
+        int allCompleted = toDoService.completeAllInProgress();
+        toDoService.deleteOne(ids.get(1));
+
+        //validate
+        assertNotNull(completed.completedAt);
+        assertEquals(5, bulkCompleted);
+        assertEquals(3, allCompleted);
+        assertThrows(ToDoNotFoundException.class, () -> toDoService.getOne(ids.get(1)));
+        assertEquals(8, toDoService.getAllCompleted().size());
+        assertEquals(8, toDoService.getCompletionHistogram(ToDoCompletionBucket.Size.HOUR, null, null).stream()
+                .mapToLong(bucket -> bucket.count)
+                .sum());
+
+        toDoService.deleteAll();
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(0, countOnShard(shard, null));
+        }
+    }
+
+    @Test
+    void whenSeed_thenEveryShardHoldsTheTodosItsIdsPointTo() throws SQLException {
+        //call
+        seeder.seed(300);
+        ToDoResponse saved = toDoService.upsert(saveRequest(null, "Saved after seeding"));
+
+        //validate
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(shard == shards.shardOf(saved.id) ? 101 : 100, countOnShard(shard, null));
+        }
+        for (ToDoResponse todo : toDoService.getAll()) {
+            assertEquals(1, countOnShard(shards.shardOf(todo.id), todo.id));
+        }
+    }
+
+    private long countOnShard(int shard, Long id) throws SQLException {
+        var jdbcTemplate = new JdbcTemplate(dataSource.unwrap(ShardRoutingDataSource.class).getShards().get(shard));
+        return id == null
+                ? jdbcTemplate.queryForObject("select count(*) from to_do_entity", Long.class)
+                : jdbcTemplate.queryForObject("select count(*) from to_do_entity where id = ?", Long.class, id);
+    }
+
+    private static ToDoSaveRequest saveRequest(Long id, String text) {
+        var request = new ToDoSaveRequest();
+        request.id = id;
+        request.text = text;
+        return request;
+    }
+}
@@ -0,0 +1,8 @@
+-- nothing replicates between local databases, so the replicas of ReplicaRoutingTest only get the table
+CREATE TABLE IF NOT EXISTS to_do_entity (
+    id BIGINT PRIMARY KEY,
+    completed_at TIMESTAMP,
+    completed_hour BIGINT,
+    text VARCHAR(255) NOT NULL,
+    version BIGINT NOT NULL
+);